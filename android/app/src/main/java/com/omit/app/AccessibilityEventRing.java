@@ -0,0 +1,82 @@
+package com.omit.app;
+
+/**
+ * Preallocated single-producer/single-consumer queue of the few
+ * AccessibilityEvent fields the service needs.
+ *
+ * AppBlockerService.onAccessibilityEvent is the only producer (main thread)
+ * and the event worker thread is the only consumer. Slots are plain arrays, so
+ * neither side allocates. The producer publishes a slot by writing tail after
+ * filling it, and the consumer releases it by writing head after copying it out.
+ */
+public class AccessibilityEventRing {
+
+    /** Consumer-owned copy of one queued event. */
+    public static final class Event {
+        public String packageName;
+        public int eventType;
+        public long eventUptimeMs;
+        public long receivedUptimeMs;
+        public long receivedNanos;
+        public long wallTimeMs;
+    }
+
+    private final int mask;
+    private final CharSequence[] packageNames;
+    private final int[] eventTypes;
+    private final long[] eventUptimes;
+    private final long[] receivedUptimes;
+    private final long[] receivedNanos;
+    private final long[] wallTimes;
+
+    private volatile long head = 0; // next slot to read, written by the consumer
+    private volatile long tail = 0; // next slot to write, written by the producer
+
+    /** @param capacity rounded up to a power of two */
+    public AccessibilityEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        packageNames = new CharSequence[size];
+        eventTypes = new int[size];
+        eventUptimes = new long[size];
+        receivedUptimes = new long[size];
+        receivedNanos = new long[size];
+        wallTimes = new long[size];
+    }
+
+    /** Producer only. Returns false if the ring is full. */
+    public boolean offer(CharSequence packageName, int eventType, long eventUptimeMs,
+                         long receivedUptimeMs, long receivedNanos, long wallTimeMs) {
+        long t = tail;
+        if (t - head > mask) {
+            return false;
+        }
+        int i = (int) t & mask;
+        packageNames[i] = packageName;
+        eventTypes[i] = eventType;
+        eventUptimes[i] = eventUptimeMs;
+        receivedUptimes[i] = receivedUptimeMs;
+        this.receivedNanos[i] = receivedNanos;
+        wallTimes[i] = wallTimeMs;
+        tail = t + 1;
+        return true;
+    }
+
+    /** Consumer only. Copies the oldest event into out; returns false if empty. */
+    public boolean poll(Event out) {
+        long h = head;
+        if (h == tail) {
+            return false;
+        }
+        int i = (int) h & mask;
+        out.packageName = packageNames[i].toString();
+        out.eventType = eventTypes[i];
+        out.eventUptimeMs = eventUptimes[i];
+        out.receivedUptimeMs = receivedUptimes[i];
+        out.receivedNanos = receivedNanos[i];
+        out.wallTimeMs = wallTimes[i];
+        packageNames[i] = null;
+        head = h + 1;
+        return true;
+    }
+}
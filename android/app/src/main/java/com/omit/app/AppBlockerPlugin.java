@@ -1,24 +1,18 @@
 package com.omit.app;
 
-import android.app.AppOpsManager;
 import android.content.Context;
-import android.content.BroadcastReceiver;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
 
-import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
 
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -26,32 +20,40 @@ import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import com.omit.core.AdaptiveDebouncer;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @CapacitorPlugin(name = "AppBlocker")
 public class AppBlockerPlugin extends Plugin {
 
-    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
-    private static final String KEY_BLOCKED_APPS = "blocked_apps";
-    private static final String KEY_IS_MONITORING = "is_monitoring";
-
-    private static List<String> blockedPackages = new ArrayList<>();
     private static boolean isMonitoring = false;
-    private BroadcastReceiver usageReceiver;
-    private final ExecutorService iconExecutor = Executors.newFixedThreadPool(2);
+    private static final long DEFAULT_USAGE_FLUSH_INTERVAL_MS = 10000;
+    private final Handler usageFlushHandler = new Handler(Looper.getMainLooper());
+    private final Runnable usageFlushRunnable = this::onUsageFlushTick;
+    private volatile long usageFlushIntervalMs = DEFAULT_USAGE_FLUSH_INTERVAL_MS;
 
-    public static List<String> getBlockedPackages() {
-        return blockedPackages;
-    }
+    private static final int DEFAULT_APPS_PAGE_SIZE = 40;
+    private final AtomicInteger nextStreamId = new AtomicInteger();
+    private final Map<String, AtomicBoolean> activeStreams = new ConcurrentHashMap<>();
+    // Icon rendering is CPU-bound; leave a core for the UI thread
+    private static final int ICON_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    private final ExecutorService iconExecutor = Executors.newFixedThreadPool(ICON_THREADS);
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
 
     public static boolean isMonitoringActive() {
         return isMonitoring;
@@ -62,88 +64,332 @@ public class AppBlockerPlugin extends Plugin {
         super.load();
         
         // Load persisted state
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        isMonitoring = prefs.getBoolean(KEY_IS_MONITORING, false);
-        Set<String> blockedSet = prefs.getStringSet(KEY_BLOCKED_APPS, new HashSet<>());
-        blockedPackages = new ArrayList<>(blockedSet);
-
-        usageReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if ("com.omit.app.USAGE_UPDATE".equals(intent.getAction())) {
-                    String pkg = intent.getStringExtra("packageName");
-                    long duration = intent.getLongExtra("duration", 0);
-                    
-                    JSObject ret = new JSObject();
-                    ret.put("packageName", pkg);
-                    ret.put("duration", duration);
-                    notifyListeners("usageUpdate", ret);
-                }
-            }
-        };
-        
-        IntentFilter filter = new IntentFilter("com.omit.app.USAGE_UPDATE");
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                 getContext().registerReceiver(usageReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-            } else {
-                ContextCompat.registerReceiver(getContext(), usageReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
-            }
-        } catch (Exception e) {
-            Log.e("AppBlockerPlugin", "Error registering receiver", e);
-        }
+        ConfigStore.Config config = ConfigStore.get(getContext()).current();
+        isMonitoring = config.monitoring;
+        Blocklist.setLayer(Blocklist.LAYER_USER, config.getBlockedApps());
+        Blocklist.setRules(compileRules(config.getRules()));
+
+        scheduleUsageFlush();
+
+        // Serve icons to <img> tags by URL instead of Base64 over the bridge
+        getBridge().setWebViewClient(new AppIconWebViewClient(getBridge()));
+
+        // Build the package catalog off the main thread so the first picker open is fast
+        ioExecutor.execute(() -> PackageCatalog.get(getContext()));
+    }
+
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        // Deliver whatever accumulated while the WebView was in the background
+        flushUsageBatch();
+        scheduleUsageFlush();
+    }
+
+    @Override
+    protected void handleOnPause() {
+        // No point waking the WebView while it's hidden; the batch keeps growing natively
+        usageFlushHandler.removeCallbacks(usageFlushRunnable);
+        super.handleOnPause();
     }
 
     @Override
     protected void handleOnDestroy() {
-        if (usageReceiver != null) {
-            try {
-                getContext().unregisterReceiver(usageReceiver);
-            } catch (Exception e) {
-                // Already unregistered or error
-            }
+        usageFlushHandler.removeCallbacks(usageFlushRunnable);
+        for (AtomicBoolean cancelled : activeStreams.values()) {
+            cancelled.set(true);
         }
         if (iconExecutor != null) {
             iconExecutor.shutdownNow();
         }
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
         super.handleOnDestroy();
     }
 
     @PluginMethod
     public void setBlockedApps(PluginCall call) {
-        JSArray apps = call.getArray("apps");
-        blockedPackages.clear();
-        
-        Set<String> appSet = new HashSet<>();
-        if (apps != null) {
+        Set<String> appSet;
+        try {
+            appSet = toStringSet(call.getArray("apps"));
+        } catch (JSONException e) {
+            call.reject("Failed to parse blocked apps", e);
+            return;
+        }
+
+        // An unchanged list comes back as the same snapshot: no write, no republish
+        ConfigStore store = ConfigStore.get(getContext());
+        long previousVersion = store.current().blockedAppsVersion;
+        ConfigStore.Config config = store.setBlockedApps(appSet);
+        boolean changed = config.blockedAppsVersion != previousVersion;
+        if (changed) {
+            // Build the new list fully before swapping it in, so the service never
+            // observes a partially updated blocklist
+            Blocklist.setLayer(Blocklist.LAYER_USER, config.getBlockedApps());
+        }
+        call.resolve(blockedAppsResult(config, changed, false));
+    }
+
+    /**
+     * Applies add/remove deltas to the blocked apps. With baseVersion set, the
+     * delta only applies if the list is still at that version; otherwise the
+     * result has stale: true and the caller should send the full list.
+     */
+    @PluginMethod
+    public void updateBlockedApps(PluginCall call) {
+        Set<String> add;
+        Set<String> remove;
+        try {
+            add = toStringSet(call.getArray("add"));
+            remove = toStringSet(call.getArray("remove"));
+        } catch (JSONException e) {
+            call.reject("Failed to parse blocked app delta", e);
+            return;
+        }
+        long baseVersion = call.getLong("baseVersion", -1L);
+
+        ConfigStore store = ConfigStore.get(getContext());
+        long previousVersion = store.current().blockedAppsVersion;
+        ConfigStore.Config config = store.updateBlockedApps(add, remove, baseVersion);
+        if (config == null) {
+            call.resolve(blockedAppsResult(store.current(), false, true));
+            return;
+        }
+        boolean changed = config.blockedAppsVersion != previousVersion;
+        if (changed) {
+            Blocklist.setLayer(Blocklist.LAYER_USER, config.getBlockedApps());
+        }
+        call.resolve(blockedAppsResult(config, changed, false));
+    }
+
+    private static JSObject blockedAppsResult(ConfigStore.Config config, boolean changed, boolean stale) {
+        JSObject result = new JSObject();
+        result.put("count", config.getBlockedAppCount());
+        result.put("version", config.blockedAppsVersion);
+        result.put("hash", config.getBlockedAppsHash());
+        result.put("changed", changed);
+        result.put("stale", stale);
+        return result;
+    }
+
+    private static Set<String> toStringSet(JSArray array) throws JSONException {
+        Set<String> set = new HashSet<>();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                set.add(array.getString(i));
+            }
+        }
+        return set;
+    }
+
+    @PluginMethod
+    public void setUsageLimits(PluginCall call) {
+        try {
+            UsageLimitEngine.get(getContext()).setPolicy(call.getData());
+        } catch (JSONException e) {
+            call.reject("Failed to parse usage limits", e);
+            return;
+        }
+        call.resolve(buildUsageLimitState());
+    }
+
+    @PluginMethod
+    public void getUsageLimitState(PluginCall call) {
+        call.resolve(buildUsageLimitState());
+    }
+
+    private JSObject buildUsageLimitState() {
+        UsageLimitEngine engine = UsageLimitEngine.get(getContext());
+        engine.rollDayIfNeeded(System.currentTimeMillis());
+        Map<String, Long> usage = engine.getUsageToday();
+        Set<String> exhausted = engine.getExhausted();
+
+        JSObject usageObj = new JSObject();
+        for (Map.Entry<String, Long> entry : usage.entrySet()) {
+            usageObj.put(entry.getKey(), (long) entry.getValue());
+        }
+
+        JSArray apps = new JSArray();
+        for (Map.Entry<String, Long> entry : engine.getAppLimits().entrySet()) {
+            JSObject app = new JSObject();
+            app.put("packageName", entry.getKey());
+            app.put("limitMs", (long) entry.getValue());
+            app.put("usedMs", usage.containsKey(entry.getKey()) ? (long) usage.get(entry.getKey()) : 0L);
+            app.put("exhausted", exhausted.contains(entry.getKey()));
+            apps.put(app);
+        }
+
+        JSArray groups = new JSArray();
+        for (UsageLimitEngine.Group group : engine.getGroups()) {
+            long used = engine.usedBy(group.packages);
+            JSObject groupObj = new JSObject();
+            groupObj.put("id", group.id);
+            groupObj.put("limitMs", group.limitMs);
+            groupObj.put("usedMs", used);
+            groupObj.put("exhausted", used >= group.limitMs
+                    || (!group.packages.isEmpty() && exhausted.containsAll(group.packages)));
+            groups.put(groupObj);
+        }
+
+        JSArray exhaustedArray = new JSArray();
+        for (String pkg : exhausted) {
+            exhaustedArray.put(pkg);
+        }
+
+        JSObject result = new JSObject();
+        result.put("usage", usageObj);
+        result.put("apps", apps);
+        result.put("groups", groups);
+        result.put("exhausted", exhaustedArray);
+        return result;
+    }
+
+    @PluginMethod
+    public void setBlockSchedule(PluginCall call) {
+        try {
+            BlockScheduleEngine.get(getContext()).setRules(call.getData());
+        } catch (JSONException e) {
+            call.reject("Failed to parse block schedule", e);
+            return;
+        }
+        call.resolve(buildBlockScheduleState());
+    }
+
+    @PluginMethod
+    public void getBlockSchedule(PluginCall call) {
+        call.resolve(buildBlockScheduleState());
+    }
+
+    private JSObject buildBlockScheduleState() {
+        BlockScheduleEngine engine = BlockScheduleEngine.get(getContext());
+
+        JSArray rules = new JSArray();
+        for (BlockScheduleEngine.Rule rule : engine.getRules()) {
+            JSObject ruleObj = new JSObject();
+            ruleObj.put("id", rule.id);
+            JSArray packages = new JSArray();
+            for (String pkg : rule.packages) {
+                packages.put(pkg);
+            }
+            JSArray days = new JSArray();
+            for (int day : rule.days) {
+                days.put(day);
+            }
+            ruleObj.put("packages", packages);
+            ruleObj.put("days", days);
+            ruleObj.put("start", String.format(Locale.US, "%02d:%02d", rule.startMinute / 60, rule.startMinute % 60));
+            ruleObj.put("end", String.format(Locale.US, "%02d:%02d", rule.endMinute / 60, rule.endMinute % 60));
+            rules.put(ruleObj);
+        }
+
+        JSArray active = new JSArray();
+        for (String pkg : engine.getActivePackages()) {
+            active.put(pkg);
+        }
+
+        JSObject result = new JSObject();
+        result.put("rules", rules);
+        result.put("active", active);
+        long next = engine.getNextBoundary();
+        if (next != BlockScheduleEngine.NO_BOUNDARY) {
+            result.put("nextBoundary", next);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the pattern and attribute rules. Expected shape:
+     * {@code { rules: [{ type: "prefix" | "glob" | "category" | "installer", value }] }}
+     */
+    @PluginMethod
+    public void setBlockRules(PluginCall call) {
+        JSArray array = call.getArray("rules");
+        List<BlockRules.Rule> rules = new ArrayList<>();
+        if (array != null) {
             try {
-                for (int i = 0; i < apps.length(); i++) {
-                    String pkg = apps.getString(i);
-                    blockedPackages.add(pkg);
-                    appSet.add(pkg);
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject rule = array.getJSONObject(i);
+                    rules.add(BlockRules.parse(rule.getString("type"), rule.getString("value")));
                 }
-            } catch (JSONException e) {
-                call.reject("Failed to parse blocked apps", e);
+            } catch (JSONException | IllegalArgumentException e) {
+                call.reject("Invalid block rules: " + e.getMessage(), e);
                 return;
             }
         }
-        
-        // Persist
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putStringSet(KEY_BLOCKED_APPS, appSet).apply();
-        
+
+        BlockRules compiled = compileRules(rules);
+        Blocklist.setRules(compiled);
+        ConfigStore.get(getContext()).setRules(rules);
+        if (compiled.usesTraits()) {
+            // Resolve categories and installers now rather than on the first event per app
+            ioExecutor.execute(() -> {
+                for (PackageCatalog.App app : PackageCatalog.get(getContext()).getApps()) {
+                    compiled.matches(app.packageName);
+                }
+            });
+        }
+
+        JSObject result = new JSObject();
+        result.put("count", rules.size());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getBlockRules(PluginCall call) {
+        JSArray rules = new JSArray();
+        for (BlockRules.Rule rule : ConfigStore.get(getContext()).current().getRules()) {
+            JSObject entry = new JSObject();
+            entry.put("type", rule.getTypeName());
+            entry.put("value", rule.value);
+            rules.put(entry);
+        }
+        JSObject result = new JSObject();
+        result.put("rules", rules);
+        call.resolve(result);
+    }
+
+    private BlockRules compileRules(List<BlockRules.Rule> rules) {
+        try {
+            return BlockRules.compile(rules, PackageTraits.get(getContext()));
+        } catch (IllegalArgumentException e) {
+            Log.e("AppBlockerPlugin", "Ignoring unreadable block rules", e);
+            return BlockRules.EMPTY;
+        }
+    }
+
+    /**
+     * Turns delivery of accessibility-derived usage to JS on or off. With it
+     * off, sessions still go to the ledger and UsageStats reconciliation
+     * corrects them, so limits and history stay consistent.
+     */
+    @PluginMethod
+    public void setUsageTracking(PluginCall call) {
+        Boolean enabled = call.getBoolean("enabled");
+        if (enabled == null) {
+            call.reject("enabled is required");
+            return;
+        }
+        ConfigStore.get(getContext()).setUsageTracking(enabled);
         JSObject result = new JSObject();
-        result.put("count", blockedPackages.size());
+        result.put("enabled", enabled);
         call.resolve(result);
     }
 
     @PluginMethod
     public void startMonitoring(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("monitoring", true);
+
+        // Called on every state change from JS; once running there's nothing to do
+        if (isMonitoring && BlockingOverlayService.isRunning()) {
+            call.resolve(result);
+            return;
+        }
         isMonitoring = true;
         
-        // Persist
-        getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            .edit().putBoolean(KEY_IS_MONITORING, true).apply();
+        // Persist (a no-op if the stored flag is already set)
+        ConfigStore.get(getContext()).setMonitoring(true);
         
         // Start the overlay service
         Context context = getContext();
@@ -154,29 +400,369 @@ public class AppBlockerPlugin extends Plugin {
             context.startService(serviceIntent);
         }
         
-        JSObject result = new JSObject();
-        result.put("monitoring", true);
         call.resolve(result);
     }
 
     @PluginMethod
     public void stopMonitoring(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("monitoring", false);
+
+        if (!isMonitoring && !BlockingOverlayService.isRunning()) {
+            call.resolve(result);
+            return;
+        }
         isMonitoring = false;
         
         // Persist
-        getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            .edit().putBoolean(KEY_IS_MONITORING, false).apply();
+        ConfigStore.get(getContext()).setMonitoring(false);
         
         // Stop the overlay service
         Context context = getContext();
         Intent serviceIntent = new Intent(context, BlockingOverlayService.class);
         context.stopService(serviceIntent);
         
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setUsageFlushInterval(PluginCall call) {
+        Long intervalMs = call.getLong("intervalMs");
+        if (intervalMs == null || intervalMs < 1000) {
+            call.reject("intervalMs must be at least 1000");
+            return;
+        }
+        usageFlushIntervalMs = intervalMs;
+        scheduleUsageFlush();
+
         JSObject result = new JSObject();
-        result.put("monitoring", false);
+        result.put("intervalMs", usageFlushIntervalMs);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void flushUsage(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("flushed", flushUsageBatch());
+        call.resolve(result);
+    }
+
+    private void scheduleUsageFlush() {
+        usageFlushHandler.removeCallbacks(usageFlushRunnable);
+        usageFlushHandler.postDelayed(usageFlushRunnable, usageFlushIntervalMs);
+    }
+
+    private void onUsageFlushTick() {
+        flushUsageBatch();
+        usageFlushHandler.postDelayed(usageFlushRunnable, usageFlushIntervalMs);
+    }
+
+    private boolean flushUsageBatch() {
+        // Leave the batch pending until JS has subscribed, otherwise it would be dropped
+        if (!hasListeners("usageBatch")) {
+            return false;
+        }
+        UsageCoalescer.Batch batch = UsageCoalescer.drain();
+        if (batch == null) {
+            return false;
+        }
+
+        JSArray packages = new JSArray();
+        JSArray durations = new JSArray();
+        for (int i = 0; i < batch.packages.length; i++) {
+            packages.put(batch.packages[i]);
+            durations.put(batch.durations[i]);
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("packages", packages);
+        ret.put("durations", durations);
+        ret.put("from", batch.from);
+        ret.put("to", batch.to);
+        notifyListeners("usageBatch", ret);
+        return true;
+    }
+
+    @PluginMethod
+    public void getUsageLog(PluginCall call) {
+        long now = System.currentTimeMillis();
+        long from = call.getLong("from", now - 24L * 60 * 60 * 1000);
+        long to = call.getLong("to", now);
+
+        ioExecutor.execute(() -> {
+            // Fold in UsageStats corrections up to now before reading
+            UsageStatsIngestor.get(getContext()).ingest();
+
+            JSArray entries = new JSArray();
+            UsageLedger.get(getContext()).read(from, to, (packageName, startMs, durationMs, source) -> {
+                JSObject entry = new JSObject();
+                entry.put("packageName", packageName);
+                entry.put("startTime", startMs);
+                entry.put("duration", durationMs);
+                entry.put("source", source == UsageLedger.SOURCE_USAGE_STATS ? "usageStats" : "accessibility");
+                entries.put(entry);
+            });
+
+            JSObject result = new JSObject();
+            result.put("entries", entries);
+            call.resolve(result);
+        });
+    }
+
+    /**
+     * Usage per app in hourly or daily buckets, answered from the native
+     * rollups. Hourly data covers the last 14 days, daily the last 90.
+     */
+    @PluginMethod
+    public void getUsageHistogram(PluginCall call) {
+        long now = System.currentTimeMillis();
+        long from = call.getLong("from", now - 7L * 24 * 60 * 60 * 1000);
+        long to = call.getLong("to", now);
+        String granularityName = call.getString("granularity", "day");
+        int granularity;
+        if ("hour".equals(granularityName)) {
+            granularity = UsageRollups.GRANULARITY_HOUR;
+        } else if ("day".equals(granularityName)) {
+            granularity = UsageRollups.GRANULARITY_DAY;
+        } else {
+            call.reject("granularity must be \"hour\" or \"day\"");
+            return;
+        }
+        if (to <= from) {
+            call.reject("to must be after from");
+            return;
+        }
+
+        String[] packages = null;
+        JSArray filter = call.getArray("packages");
+        if (filter != null) {
+            try {
+                packages = new String[filter.length()];
+                for (int i = 0; i < packages.length; i++) {
+                    packages[i] = filter.getString(i);
+                }
+            } catch (JSONException e) {
+                call.reject("Failed to parse packages", e);
+                return;
+            }
+        }
+        String[] requested = packages;
+
+        ioExecutor.execute(() -> {
+            UsageRollups.Histogram histogram = UsageLedger.get(getContext()).getRollups()
+                    .query(from, to, granularity, requested, PackageInterner.get(getContext()));
+
+            JSArray bucketStarts = new JSArray();
+            for (long start : histogram.bucketStarts) {
+                bucketStarts.put(start);
+            }
+            JSArray series = new JSArray();
+            for (int i = 0; i < histogram.packages.length; i++) {
+                JSArray durations = new JSArray();
+                long total = 0;
+                for (long duration : histogram.durations[i]) {
+                    durations.put(duration);
+                    total += duration;
+                }
+                JSObject entry = new JSObject();
+                entry.put("packageName", histogram.packages[i]);
+                entry.put("durations", durations);
+                entry.put("totalMs", total);
+                series.put(entry);
+            }
+
+            JSObject result = new JSObject();
+            result.put("granularity", granularityName);
+            result.put("bucketStarts", bucketStarts);
+            result.put("series", series);
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void ingestUsageStats(PluginCall call) {
+        ioExecutor.execute(() -> {
+            UsageStatsIngestor.Result ingested = UsageStatsIngestor.get(getContext()).ingest();
+            JSObject result = new JSObject();
+            result.put("ingested", ingested != null);
+            if (ingested != null) {
+                result.put("from", ingested.fromMs);
+                result.put("to", ingested.toMs);
+                result.put("corrections", ingested.corrections);
+            }
+            call.resolve(result);
+        });
+    }
+
+    @PluginMethod
+    public void getBlockingMetrics(PluginCall call) {
+        JSObject stages = new JSObject();
+        for (Map.Entry<String, LatencyHistogram> entry : BlockingMetrics.stages().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            JSObject stage = new JSObject();
+            stage.put("count", histogram.getCount());
+            stage.put("p50", histogram.percentileMicros(50) / 1000.0);
+            stage.put("p95", histogram.percentileMicros(95) / 1000.0);
+            stage.put("p99", histogram.percentileMicros(99) / 1000.0);
+            stage.put("max", histogram.getMaxMicros() / 1000.0);
+            stage.put("mean", histogram.getMeanMicros() / 1000.0);
+            stages.put(entry.getKey(), stage);
+        }
+
+        JSObject result = new JSObject();
+        result.put("unit", "ms");
+        result.put("stages", stages);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void resetBlockingMetrics(PluginCall call) {
+        BlockingMetrics.reset();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void setSurfaceRules(PluginCall call) {
+        try {
+            SurfaceRules.get(getContext()).setRules(call.getData());
+        } catch (JSONException e) {
+            call.reject("Failed to parse surface rules", e);
+            return;
+        }
+        getSurfaceRules(call);
+    }
+
+    @PluginMethod
+    public void getSurfaceRules(PluginCall call) {
+        JSArray rules = new JSArray();
+        for (SurfaceRules.Rule rule : SurfaceRules.get(getContext()).getRules()) {
+            JSObject ruleObj = new JSObject();
+            ruleObj.put("id", rule.id);
+            ruleObj.put("packageName", rule.packageName);
+            JSArray viewIds = new JSArray();
+            for (String viewId : rule.viewIds) {
+                viewIds.put(viewId);
+            }
+            JSArray classNames = new JSArray();
+            for (String className : rule.classNames) {
+                classNames.put(className);
+            }
+            ruleObj.put("viewIds", viewIds);
+            ruleObj.put("classNames", classNames);
+            rules.put(ruleObj);
+        }
+        JSObject result = new JSObject();
+        result.put("rules", rules);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getSurfaceMetrics(PluginCall call) {
+        LatencyHistogram inspect = SurfaceInspector.INSPECT;
+        JSObject inspectStage = new JSObject();
+        inspectStage.put("count", inspect.getCount());
+        inspectStage.put("p50", inspect.percentileMicros(50) / 1000.0);
+        inspectStage.put("p95", inspect.percentileMicros(95) / 1000.0);
+        inspectStage.put("p99", inspect.percentileMicros(99) / 1000.0);
+        inspectStage.put("max", inspect.getMaxMicros() / 1000.0);
+        inspectStage.put("mean", inspect.getMeanMicros() / 1000.0);
+
+        JSObject result = new JSObject();
+        result.put("unit", "ms");
+        result.put("inspect", inspectStage);
+        for (Map.Entry<String, Long> counter : SurfaceInspector.counters().entrySet()) {
+            result.put(counter.getKey(), counter.getValue());
+        }
+        result.put("maxNodes", SurfaceInspector.MAX_NODES);
+        result.put("maxDepth", SurfaceInspector.MAX_DEPTH);
+        result.put("minIntervalMs", SurfaceInspector.MIN_INTERVAL_MS);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void resetSurfaceMetrics(PluginCall call) {
+        SurfaceInspector.resetMetrics();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getDebounceStats(PluginCall call) {
+        JSArray apps = new JSArray();
+        for (AdaptiveDebouncer.Entry entry : AdaptiveDebouncer.get().snapshot()) {
+            JSObject app = new JSObject();
+            app.put("packageName", entry.packageName);
+            app.put("debounceMs", entry.debounceMs);
+            app.put("cooldownMs", entry.cooldownMs);
+            app.put("launches", entry.launches);
+            app.put("dismissals", entry.dismissals);
+            apps.put(app);
+        }
+
+        JSObject result = new JSObject();
+        result.put("apps", apps);
+        result.put("defaultDebounceMs", AdaptiveDebouncer.DEFAULT_DEBOUNCE_MS);
+        result.put("defaultCooldownMs", AdaptiveDebouncer.DEFAULT_COOLDOWN_MS);
         call.resolve(result);
     }
 
+    @PluginMethod
+    public void resetDebounceStats(PluginCall call) {
+        AdaptiveDebouncer.get().reset();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void setEventTraceEnabled(PluginCall call) {
+        EventTraceRecorder recorder = EventTraceRecorder.get(getContext());
+        recorder.setEnabled(call.getBoolean("enabled", false));
+        call.resolve(buildEventTraceStatus(recorder));
+    }
+
+    @PluginMethod
+    public void getEventTraceStatus(PluginCall call) {
+        call.resolve(buildEventTraceStatus(EventTraceRecorder.get(getContext())));
+    }
+
+    @PluginMethod
+    public void clearEventTrace(PluginCall call) {
+        EventTraceRecorder recorder = EventTraceRecorder.get(getContext());
+        recorder.clear();
+        call.resolve(buildEventTraceStatus(recorder));
+    }
+
+    @PluginMethod
+    public void exportEventTrace(PluginCall call) {
+        ioExecutor.execute(() -> {
+            Context context = getContext();
+            File dir = new File(context.getCacheDir(), "event_traces");
+            if (!dir.exists() && !dir.mkdirs()) {
+                call.reject("Failed to create trace directory");
+                return;
+            }
+            File out = new File(dir, "omit-trace-" + System.currentTimeMillis() + ".csv");
+            try {
+                int records = EventTraceRecorder.get(context).exportCsv(out);
+                JSObject result = new JSObject();
+                result.put("path", out.getAbsolutePath());
+                // Shareable through the app's FileProvider (cache-path)
+                result.put("uri", FileProvider.getUriForFile(context,
+                        context.getPackageName() + ".fileprovider", out).toString());
+                result.put("records", records);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to export event trace", e);
+            }
+        });
+    }
+
+    private JSObject buildEventTraceStatus(EventTraceRecorder recorder) {
+        JSObject result = new JSObject();
+        result.put("enabled", EventTraceRecorder.isEnabled());
+        result.put("records", recorder.getRecordCount());
+        result.put("capacity", EventTraceRecorder.CAPACITY);
+        return result;
+    }
+
     @PluginMethod
     public void checkPermissions(PluginCall call) {
         Context context = getContext();
@@ -222,28 +808,23 @@ public class AppBlockerPlugin extends Plugin {
     public void getInstalledApps(PluginCall call) {
         Context context = getContext();
         PackageManager pm = context.getPackageManager();
-        List<ApplicationInfo> apps = pm.getInstalledApplications(PackageManager.GET_META_DATA);
+        AppIconCache iconCache = AppIconCache.get(context);
+        boolean includeBase64Icons = call.getBoolean("includeBase64Icons", false);
         
         JSArray result = new JSArray();
-        for (ApplicationInfo app : apps) {
-            boolean isUserApp = (app.flags & ApplicationInfo.FLAG_SYSTEM) == 0 || (app.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
-            
-            if (isUserApp) {
-                JSObject appInfo = new JSObject();
-                appInfo.put("packageName", app.packageName);
-                appInfo.put("appName", pm.getApplicationLabel(app).toString());
-                
-                // Return Base64 encoded icon
+        // Served from the incrementally maintained catalog instead of a full rescan
+        for (PackageCatalog.App app : PackageCatalog.get(context).getApps()) {
+            JSObject appInfo = toAppJson(app);
+            if (includeBase64Icons) {
                 try {
-                    Drawable icon = pm.getApplicationIcon(app);
-                    String base64Icon = getBase64FromDrawable(icon);
+                    String base64Icon = iconCache.get(app.packageName, app.lastUpdateTime,
+                            () -> AppIconRenderer.renderPng(pm.getApplicationIcon(app.packageName)));
                     appInfo.put("icon", base64Icon);
                 } catch (Exception e) {
                     appInfo.put("icon", "");
                 }
-                
-                result.put(appInfo);
             }
+            result.put(appInfo);
         }
         
         JSObject response = new JSObject();
@@ -251,6 +832,155 @@ public class AppBlockerPlugin extends Plugin {
         call.resolve(response);
     }
 
+    /**
+     * Returns only the apps added, updated or removed since the given change
+     * token. Without a token (or with one from an earlier process) the full list
+     * is returned with full = true.
+     */
+    @PluginMethod
+    public void getInstalledAppsSince(PluginCall call) {
+        PackageCatalog.Delta delta = PackageCatalog.get(getContext()).since(call.getString("token"));
+
+        JSArray apps = new JSArray();
+        for (PackageCatalog.App app : delta.upserted) {
+            apps.put(toAppJson(app));
+        }
+        JSArray removed = new JSArray();
+        for (String packageName : delta.removed) {
+            removed.put(packageName);
+        }
+
+        JSObject result = new JSObject();
+        result.put("token", delta.token);
+        result.put("full", delta.full);
+        result.put("apps", apps);
+        result.put("removed", removed);
+        call.resolve(result);
+    }
+
+    private JSObject toAppJson(PackageCatalog.App app) {
+        JSObject appInfo = new JSObject();
+        appInfo.put("packageName", app.packageName);
+        appInfo.put("appName", app.appName);
+        // Icons are served over a local URL; Base64 only on request
+        appInfo.put("iconUrl", AppIconWebViewClient.iconUrl(getBridge(), app.packageName, app.lastUpdateTime));
+        return appInfo;
+    }
+
+    /**
+     * Streaming variant of getInstalledApps. Resolves immediately with a stream
+     * id, then emits installedAppsPage events with labels and icon URLs. With
+     * includeIcons, one installedAppIcon event per Base64 icon follows as it is
+     * rendered. installedAppsStreamEnd is emitted last.
+     */
+    @PluginMethod
+    public void startInstalledAppsStream(PluginCall call) {
+        int pageSize = Math.max(1, call.getInt("pageSize", DEFAULT_APPS_PAGE_SIZE));
+        boolean includeIcons = call.getBoolean("includeIcons", false);
+        String streamId = Integer.toString(nextStreamId.incrementAndGet());
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        activeStreams.put(streamId, cancelled);
+
+        JSObject started = new JSObject();
+        started.put("streamId", streamId);
+        call.resolve(started);
+
+        ioExecutor.execute(() -> streamInstalledApps(streamId, pageSize, includeIcons, cancelled));
+    }
+
+    @PluginMethod
+    public void cancelInstalledAppsStream(PluginCall call) {
+        String streamId = call.getString("streamId");
+        AtomicBoolean cancelled = streamId != null ? activeStreams.get(streamId) : null;
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", cancelled != null);
+        call.resolve(result);
+    }
+
+    private void streamInstalledApps(String streamId, int pageSize, boolean includeIcons, AtomicBoolean cancelled) {
+        List<PackageCatalog.App> apps = PackageCatalog.get(getContext()).getApps();
+        // Counts the page walk itself plus every queued icon, so the end event
+        // fires only once everything has been delivered or skipped
+        AtomicInteger pending = new AtomicInteger(1);
+
+        JSArray page = new JSArray();
+        List<PackageCatalog.App> pageApps = new ArrayList<>();
+        int total = 0;
+        for (PackageCatalog.App app : apps) {
+            if (cancelled.get()) break;
+            page.put(toAppJson(app));
+            pageApps.add(app);
+            total++;
+
+            if (page.length() >= pageSize) {
+                emitAppsPage(streamId, page, false, total);
+                // Icons are queued only after their page is out, so JS always
+                // knows the app by the time its icon arrives
+                if (includeIcons) {
+                    queueStreamIcons(streamId, pageApps, pending, cancelled);
+                }
+                page = new JSArray();
+                pageApps = new ArrayList<>();
+            }
+        }
+        if (!cancelled.get()) {
+            emitAppsPage(streamId, page, true, total);
+            if (includeIcons) {
+                queueStreamIcons(streamId, pageApps, pending, cancelled);
+            }
+        }
+        finishStreamTask(streamId, pending, cancelled);
+    }
+
+    private void queueStreamIcons(String streamId, List<PackageCatalog.App> apps, AtomicInteger pending,
+                                  AtomicBoolean cancelled) {
+        PackageManager pm = getContext().getPackageManager();
+        AppIconCache iconCache = AppIconCache.get(getContext());
+        for (PackageCatalog.App app : apps) {
+            pending.incrementAndGet();
+            iconExecutor.execute(() -> {
+                try {
+                    if (cancelled.get()) return;
+                    String icon = iconCache.get(app.packageName, app.lastUpdateTime,
+                            () -> AppIconRenderer.renderPng(pm.getApplicationIcon(app.packageName)));
+                    if (cancelled.get()) return;
+                    JSObject iconEvent = new JSObject();
+                    iconEvent.put("streamId", streamId);
+                    iconEvent.put("packageName", app.packageName);
+                    iconEvent.put("icon", icon);
+                    notifyListeners("installedAppIcon", iconEvent);
+                } catch (Exception e) {
+                    Log.w("AppBlockerPlugin", "Error extracting icon for " + app.packageName, e);
+                } finally {
+                    finishStreamTask(streamId, pending, cancelled);
+                }
+            });
+        }
+    }
+
+    private void emitAppsPage(String streamId, JSArray apps, boolean done, int total) {
+        JSObject event = new JSObject();
+        event.put("streamId", streamId);
+        event.put("apps", apps);
+        event.put("done", done);
+        event.put("total", total);
+        notifyListeners("installedAppsPage", event);
+    }
+
+    private void finishStreamTask(String streamId, AtomicInteger pending, AtomicBoolean cancelled) {
+        if (pending.decrementAndGet() != 0) {
+            return;
+        }
+        activeStreams.remove(streamId);
+        JSObject event = new JSObject();
+        event.put("streamId", streamId);
+        event.put("cancelled", cancelled.get());
+        notifyListeners("installedAppsStreamEnd", event);
+    }
+
     @PluginMethod
     public void getAppIcon(PluginCall call) {
         String packageName = call.getString("packageName");
@@ -259,14 +989,27 @@ public class AppBlockerPlugin extends Plugin {
             return;
         }
 
+        // Memory hits are answered straight away without touching PackageManager
+        AppIconCache iconCache = AppIconCache.get(getContext());
+        String cached = iconCache.getIfPresent(packageName);
+        if (cached != null) {
+            JSObject result = new JSObject();
+            result.put("icon", cached);
+            call.resolve(result);
+            return;
+        }
+
         iconExecutor.execute(() -> {
             try {
                 PackageManager pm = getContext().getPackageManager();
-                Drawable icon = pm.getApplicationIcon(packageName);
-                String base64Icon = getBase64FromDrawable(icon);
+                PackageCatalog.App app = PackageCatalog.get(getContext()).getApp(packageName);
+                long version = app != null ? app.lastUpdateTime : pm.getPackageInfo(packageName, 0).lastUpdateTime;
+                String base64Icon = iconCache.get(packageName, version,
+                        () -> AppIconRenderer.renderPng(pm.getApplicationIcon(packageName)));
                 
                 JSObject result = new JSObject();
                 result.put("icon", base64Icon);
+                result.put("iconUrl", AppIconWebViewClient.iconUrl(getBridge(), packageName, version));
                 call.resolve(result);
             } catch (Exception e) {
                 Log.e("AppBlockerPlugin", "Error extracting icon for " + packageName, e);
@@ -275,32 +1018,88 @@ public class AppBlockerPlugin extends Plugin {
         });
     }
 
-    private String getBase64FromDrawable(Drawable drawable) {
-        if (drawable == null) return "";
-        
-        Bitmap bitmap;
-        if (drawable instanceof BitmapDrawable) {
-            bitmap = ((BitmapDrawable) drawable).getBitmap();
-        } else {
-            // Handle adaptive icons or other drawables
-            bitmap = Bitmap.createBitmap(
-                drawable.getIntrinsicWidth() <= 0 ? 1 : drawable.getIntrinsicWidth(), 
-                drawable.getIntrinsicHeight() <= 0 ? 1 : drawable.getIntrinsicHeight(), 
-                Bitmap.Config.ARGB_8888
-            );
-            Canvas canvas = new Canvas(bitmap);
-            drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-            drawable.draw(canvas);
+    /**
+     * Renders icons for many packages at once at the requested size and
+     * format. Every icon thread pulls packages from the list until it's
+     * exhausted, and the call resolves when the last one finishes. The icons
+     * stay in AppIconCache and come back as local URLs keyed by package, so
+     * no image data crosses the bridge and the WebView's loads are cache hits.
+     * Packages that are no longer installed are listed in missing.
+     */
+    @PluginMethod
+    public void getAppIcons(PluginCall call) {
+        JSArray array = call.getArray("packages");
+        if (array == null) {
+            call.reject("packages is required");
+            return;
+        }
+        String[] packages;
+        try {
+            packages = new String[array.length()];
+            for (int i = 0; i < packages.length; i++) {
+                packages[i] = array.getString(i);
+            }
+        } catch (JSONException e) {
+            call.reject("Failed to parse packages", e);
+            return;
+        }
+        int size = call.getInt("size", AppIconRenderer.DEFAULT_SIZE);
+        if (size < AppIconRenderer.MIN_SIZE || size > AppIconRenderer.MAX_SIZE) {
+            call.reject("size must be between " + AppIconRenderer.MIN_SIZE + " and " + AppIconRenderer.MAX_SIZE);
+            return;
+        }
+        int format = AppIconRenderer.parseFormat(call.getString("format", "png"));
+        if (format == 0) {
+            call.reject("format must be \"png\" or \"webp\"");
+            return;
+        }
+
+        String variant = AppIconRenderer.variant(size, format);
+        String[] icons = new String[packages.length];
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(ICON_THREADS, packages.length));
+        // The last worker to finish resolves; its decrement orders every write to icons before the read
+        AtomicInteger running = new AtomicInteger(workers);
+
+        Context context = getContext();
+        PackageManager pm = context.getPackageManager();
+        AppIconCache iconCache = AppIconCache.get(context);
+        Runnable worker = () -> {
+            PackageCatalog catalog = PackageCatalog.get(context);
+            for (int i = next.getAndIncrement(); i < packages.length; i = next.getAndIncrement()) {
+                String packageName = packages[i];
+                try {
+                    PackageCatalog.App app = catalog.getApp(packageName);
+                    long version = app != null ? app.lastUpdateTime : pm.getPackageInfo(packageName, 0).lastUpdateTime;
+                    iconCache.getBytes(packageName, variant, version,
+                            () -> AppIconRenderer.render(pm.getApplicationIcon(packageName), size, format));
+                    icons[i] = AppIconWebViewClient.iconUrl(getBridge(), packageName, version, size, format);
+                } catch (PackageManager.NameNotFoundException e) {
+                    // Uninstalled since JS listed it; reported in missing
+                } catch (Exception e) {
+                    Log.w("AppBlockerPlugin", "Error extracting icon for " + packageName, e);
+                }
+            }
+            if (running.decrementAndGet() == 0) {
+                JSObject iconMap = new JSObject();
+                JSArray missing = new JSArray();
+                for (int i = 0; i < packages.length; i++) {
+                    if (icons[i] != null) {
+                        iconMap.put(packages[i], icons[i]);
+                    } else {
+                        missing.put(packages[i]);
+                    }
+                }
+                JSObject result = new JSObject();
+                result.put("icons", iconMap);
+                result.put("missing", missing);
+                result.put("mimeType", AppIconRenderer.mimeType(format));
+                call.resolve(result);
+            }
+        };
+        for (int w = 0; w < workers; w++) {
+            iconExecutor.execute(worker);
         }
-        
-        // Resize to reduce payload size (e.g., 96x96)
-        int size = 96;
-        Bitmap resized = Bitmap.createScaledBitmap(bitmap, size, size, true);
-        
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        resized.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.NO_WRAP);
     }
 
     private boolean isAccessibilityServiceEnabled(Context context) {
@@ -318,12 +1117,6 @@ public class AppBlockerPlugin extends Plugin {
     }
 
     private boolean hasUsageStatsPermission(Context context) {
-        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
-        int mode = appOps.checkOpNoThrow(
-                AppOpsManager.OPSTR_GET_USAGE_STATS,
-                android.os.Process.myUid(),
-                context.getPackageName()
-        );
-        return mode == AppOpsManager.MODE_ALLOWED;
+        return UsageStatsIngestor.hasPermission(context);
     }
 }
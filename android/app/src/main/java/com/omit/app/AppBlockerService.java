@@ -4,37 +4,132 @@ import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
 import android.content.Intent;
 import android.content.pm.ResolveInfo;
+import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
 
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
-import java.util.HashMap;
+import com.omit.core.AdaptiveDebouncer;
+import com.omit.core.EventClassifier;
+import com.omit.core.OverlayStateMachine;
+
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AppBlockerService extends AccessibilityService {
 
     private static AppBlockerService instance;
-    private String lastBlockedPackage = "";
-    private Set<String> launcherPackages;
-    // Per-package cooldown: prevents immediately re-blocking the exact same app
-    // after dismissal, without affecting other blocked apps.
-    private final Map<String, Long> lastDismissedTimeByPackage = new HashMap<>();
-    private static final long COOLDOWN_MS = 2000; // 2 second per-package cooldown
+    // Per-package debounce and cooldown, learned from each app's launch bursts.
+    // The cooldown prevents immediately re-blocking the exact same app after
+    // dismissal, without affecting other blocked apps.
+    private final AdaptiveDebouncer debouncer = AdaptiveDebouncer.get();
 
-    // Debounce mechanism to wait for app to fully load
+    // Debounce mechanism to wait for app to fully load. The decisions live in
+    // overlayState (main thread); this class only supplies timers and the view.
     private final Handler overlayHandler = new Handler(Looper.getMainLooper());
     private Runnable pendingOverlayRunnable;
-    private String pendingBlockedPackage = "";
-    private static final long DEBOUNCE_DELAY_MS = 50; // Wait 50ms for app to fully load (reduced for instantaneous
-                                                      // blocking)
+    private final OverlayStateMachine overlayState = new OverlayStateMachine(debouncer,
+            SystemClock::uptimeMillis, new OverlayStateMachine.Output() {
+                @Override
+                public void scheduleShow(String packageName, long delayMs) {
+                    scheduleOverlay(packageName, delayMs);
+                }
 
-    // Usage Tracking
-    private String currentPackage = "";
-    private long lastAppChangeTime = 0;
+                @Override
+                public void cancelShow() {
+                    cancelPendingOverlay();
+                }
+
+                @Override
+                public void show(String packageName) {
+                    showBlockingOverlay(packageName);
+                }
+            });
+    private final Runnable resetPendingRunnable = overlayState::onReset;
+    // Timestamps of the event that started the pending block, for BlockingMetrics
+    private long pendingEventUptimeMs;
+    private long pendingReceivedUptimeMs;
+    private long pendingReceivedNanos;
+    private long firedNanos;
+
+    // Event pipeline: onAccessibilityEvent only copies fields into the ring.
+    // Classification and usage bookkeeping run on eventThread, and only the
+    // overlay decision is posted back to overlayHandler.
+    private static final int EVENT_RING_CAPACITY = 256;
+    private final AccessibilityEventRing eventRing = new AccessibilityEventRing(EVENT_RING_CAPACITY);
+    private final AccessibilityEventRing.Event workerEvent = new AccessibilityEventRing.Event();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainRunnable = this::drainEvents;
+    private HandlerThread eventThread;
+    private Handler eventHandler;
+
+    // Classification and usage tracking (event thread only)
+    private EventClassifier classifier;
+    private UsageLedger usageLedger;
+    private EventTraceRecorder traceRecorder;
+    // Checkpoints a long foreground session between window events, so a crash
+    // loses at most this much of it
+    private static final long CHECKPOINT_INTERVAL_MS = 60 * 1000;
+    private final Runnable checkpointRunnable = this::onCheckpoint;
+    private boolean checkpointArmed = false;
+
+    // Monitoring state: on while JS has monitoring on (kept current from the
+    // config store by configListener) or a scheduled blocking window is active.
+    // While off the service is dormant: subscribed to no events at all.
+    private ConfigStore config;
+    private volatile boolean monitoring = false;
+    // With usage tracking off, sessions aren't delivered to JS. They're still
+    // written to the ledger, which the UsageStats corrections and the limit
+    // engine's day rebuild both assume, so every app's window events are still
+    // subscribed to
+    private volatile boolean usageTracking = true;
+    private final ConfigStore.Listener configListener = (previous, current) -> {
+        if (previous.monitoring != current.monitoring) {
+            overlayHandler.post(this::updateMonitoring);
+        }
+        if (previous.usageTracking != current.usageTracking) {
+            usageTracking = current.usageTracking;
+        }
+    };
+
+    private Set<String> launcherPackages;
+    // Event delivery last passed to setServiceInfo (main thread)
+    private boolean subscribedMonitoring;
+    private boolean subscribedContent;
+    private String[] subscribedPackages;
+    private boolean subscribed = false;
+    private final Runnable subscriptionRunnable = this::applySubscription;
+    private BlockScheduleEngine schedules;
+
+    // In-app surface blocking. surfaceTarget is the foreground app's surface
+    // rules (event thread writes); content events are only subscribed while set.
+    private static final long SURFACE_BACK_COOLDOWN_MS = 1000;
+    private SurfaceRules surfaceRules;
+    private final SurfaceInspector surfaceInspector = new SurfaceInspector();
+    private volatile SurfaceRules.Target surfaceTarget;
+    private final Runnable surfaceInspectRunnable = this::inspectSurface;
+    private long lastSurfaceBackUptimeMs = 0;
+
+    // Blocking overlay, drawn as this service's own accessibility window
+    private BlockingOverlay overlay;
+
+    // Periodic UsageStats reconciliation (event thread)
+    private static final long USAGE_INGEST_INTERVAL_MS = 15 * 60 * 1000;
+    private UsageStatsIngestor usageStatsIngestor;
+    private final Runnable usageIngestRunnable = this::onUsageIngest;
+
+    // Daily limits (timer runs on the event thread)
+    private UsageLimitEngine usageLimits;
+    private final Runnable limitCheckRunnable = this::onLimitCheck;
 
     public static AppBlockerService getInstance() {
         return instance;
@@ -42,98 +137,218 @@ public class AppBlockerService extends AccessibilityService {
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Ensure monitoring state is synced from prefs if not already active
-        if (!AppBlockerPlugin.isMonitoringActive()) {
-            android.content.SharedPreferences prefs = getSharedPreferences("OmitAppBlockerPrefs",
-                    android.content.Context.MODE_PRIVATE);
-            if (!prefs.getBoolean("is_monitoring", false)) {
-                return;
-            }
+        // Captured first so block-latency metrics include our own processing
+        long receivedUptimeMs = SystemClock.uptimeMillis();
+        long receivedNanos = System.nanoTime();
+
+        // Dormant services are unsubscribed, but events already queued can still arrive
+        if (!monitoring || eventHandler == null) {
+            return;
         }
 
         int eventType = event.getEventType();
-        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED ||
-                eventType == AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED) {
-            CharSequence packageNameSeq = event.getPackageName();
-            if (packageNameSeq == null)
+        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            CharSequence packageName = event.getPackageName();
+            if (packageName == null)
                 return;
-
-            String packageName = packageNameSeq.toString();
-
-            // --- USAGE TRACKING ---
-            long now = System.currentTimeMillis();
-            if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED && !packageName.equals(currentPackage)) {
-                if (lastAppChangeTime > 0 && !currentPackage.isEmpty()) {
-                    long duration = now - lastAppChangeTime;
-                    if (duration > 1000) { // Only track > 1 second
-                        sendUsageUpdate(currentPackage, duration);
-                    }
+            if (!eventRing.offer(packageName, eventType, event.getEventTime(), receivedUptimeMs,
+                    receivedNanos, System.currentTimeMillis())) {
+                Log.w("AppBlockerService", "Event queue full, dropped window event from " + packageName);
+                return;
+            }
+        } else if (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+            // Bypasses the ring: the inspector throttles these to one inspection per window interval
+            SurfaceRules.Target target = surfaceTarget;
+            CharSequence packageName = event.getPackageName();
+            if (target != null && packageName != null && target.packageName.contentEquals(packageName)) {
+                long delayMs = surfaceInspector.onContentChanged(event.getWindowId(), receivedUptimeMs);
+                if (delayMs >= 0) {
+                    eventHandler.postDelayed(surfaceInspectRunnable, delayMs);
                 }
-                currentPackage = packageName;
-                lastAppChangeTime = now;
             }
-            // ----------------------
+            return;
+        } else {
+            return;
+        }
 
-            List<String> blockedPackages = AppBlockerPlugin.getBlockedPackages();
+        if (drainScheduled.compareAndSet(false, true)) {
+            eventHandler.post(drainRunnable);
+        }
+    }
 
-            // Don't block our own app - and reset state when in our app
-            if (packageName.equals(getPackageName())) {
-                cancelPendingOverlay();
-                lastBlockedPackage = "";
-                return;
+    // Event thread
+    private void drainEvents() {
+        drainScheduled.set(false);
+        AccessibilityEventRing.Event e = workerEvent;
+        while (eventRing.poll(e)) {
+            if (monitoring) {
+                onWindowEvent(e);
             }
+        }
+    }
 
-            // Reset when user goes to home/launcher
-            if (launcherPackages != null && launcherPackages.contains(packageName)) {
-                cancelPendingOverlay();
-                lastBlockedPackage = "";
-                return;
-            }
+    // Event thread
+    private void onCheckpoint() {
+        checkpointArmed = false;
+        if (monitoring && !classifier.getForegroundPackage().isEmpty()) {
+            checkpointUsage(System.currentTimeMillis());
+            armCheckpoint();
+        }
+    }
 
-            // Check if this package should be blocked
-            if (blockedPackages.contains(packageName)) {
-                // Only trigger the block overlay if the actual window state changed
-                // (e.g. app opened). Ignore notifications from blocked apps while we are
-                // elsewhere!
-                if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-                    // If it's the same package that's pending, just reset the timer (debounce)
-                    if (packageName.equals(pendingBlockedPackage)) {
-                        // Same package, reset debounce timer
-                        scheduleOverlay(packageName);
-                    } else if (!packageName.equals(lastBlockedPackage)) {
-                        // New blocked package detected
-                        pendingBlockedPackage = packageName;
-                        scheduleOverlay(packageName);
-                    }
-                }
-            } else if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
-                // ONLY cancel the pending overlay if we have transitioned to a NON-BLOCKED
-                // WINDOW.
-                // We ignore TYPE_NOTIFICATION_STATE_CHANGED here because notifications from
-                // other apps could otherwise cancel a legitimate block transition.
-
-                // CRITICAL FIX: Ignore System UI and android system package changes as they
-                // often fire transient window state changes that shouldn't cancel a real app
-                // block.
-                boolean isSystemPackage = packageName.equals("com.android.systemui") ||
-                        packageName.equals("android") ||
-                        packageName.equals("com.google.android.permissioncontroller") ||
-                        (launcherPackages != null && launcherPackages.contains(packageName));
-
-                if (!isSystemPackage) {
-                    cancelPendingOverlay();
-                    lastBlockedPackage = "";
-                }
+    // Event thread
+    private void armCheckpoint() {
+        if (!checkpointArmed) {
+            checkpointArmed = true;
+            eventHandler.postDelayed(checkpointRunnable, CHECKPOINT_INTERVAL_MS);
+        }
+    }
+
+    // Event thread
+    private void onWindowEvent(AccessibilityEventRing.Event e) {
+        String packageName = e.packageName;
+        debouncer.onWindowEvent(packageName, e.receivedUptimeMs);
+
+        int decision = classifier.onWindowEvent(packageName, e.wallTimeMs);
+        checkpointUsage(e.wallTimeMs);
+        if (EventTraceRecorder.isEnabled()) {
+            traceRecorder.record(e.eventUptimeMs, e.eventType, packageName, decision);
+        }
+        // Transient system windows (IGNORE) don't change which app is in front
+        if (decision != EventClassifier.IGNORE) {
+            updateSurfaceTarget(packageName);
+        }
+
+        if (decision == EventClassifier.BLOCK) {
+            long eventUptimeMs = e.eventUptimeMs;
+            long receivedUptimeMs = e.receivedUptimeMs;
+            long receivedNanos = e.receivedNanos;
+            overlayHandler.post(() -> onBlockCandidate(packageName, eventUptimeMs, receivedUptimeMs,
+                    receivedNanos, true));
+        } else if (decision == EventClassifier.RESET && overlayState.hasBlockState()) {
+            overlayHandler.post(resetPendingRunnable);
+        }
+    }
+
+    // Event thread
+    private void updateSurfaceTarget(String packageName) {
+        SurfaceRules.Target target = surfaceRules.targetFor(packageName);
+        if (target != surfaceTarget) {
+            surfaceTarget = target;
+            requestSubscriptionUpdate();
+        }
+        if (target != null && surfaceInspector.onWindowChanged()) {
+            eventHandler.post(surfaceInspectRunnable);
+        }
+    }
+
+    // Event thread
+    private void inspectSurface() {
+        SurfaceRules.Target target = surfaceTarget;
+        AccessibilityNodeInfo root = monitoring && target != null ? getRootInActiveWindow() : null;
+        String ruleId = surfaceInspector.inspect(root, target);
+        if (ruleId != null) {
+            overlayHandler.post(() -> onSurfaceMatched(target.packageName, ruleId));
+        }
+    }
+
+    // Main thread: a blocked surface is on screen; back out of it
+    private void onSurfaceMatched(String packageName, String ruleId) {
+        long now = SystemClock.uptimeMillis();
+        // The surface can linger for a frame or two after BACK; don't press it twice
+        if (!monitoring || now - lastSurfaceBackUptimeMs < SURFACE_BACK_COOLDOWN_MS) {
+            return;
+        }
+        lastSurfaceBackUptimeMs = now;
+        Log.i("AppBlockerService", "Blocked surface " + ruleId + " in " + packageName);
+        performGlobalAction(GLOBAL_ACTION_BACK);
+    }
+
+    // Event thread
+    private void checkpointUsage(long now) {
+        if (usageLimits != null) {
+            // Budgets reset at midnight even if no app switch happened since
+            usageLimits.rollDayIfNeeded(now);
+        }
+        String currentPackage = classifier.getForegroundPackage();
+        if (usageLedger != null && !currentPackage.isEmpty()) {
+            usageLedger.checkpointOpenSession(currentPackage, classifier.getForegroundSince(), now);
+        }
+    }
+
+    // Main thread: the overlay decision for a blocked package in the foreground
+    private void onBlockCandidate(String packageName, long eventUptimeMs, long receivedUptimeMs,
+                                  long receivedNanos, boolean restartDebounce) {
+        if (!monitoring) {
+            return;
+        }
+        if (overlayState.onBlockCandidate(packageName, restartDebounce)) {
+            pendingEventUptimeMs = eventUptimeMs;
+            pendingReceivedUptimeMs = receivedUptimeMs;
+            pendingReceivedNanos = receivedNanos;
+            BlockingMetrics.DISPATCH.recordMicros((receivedUptimeMs - eventUptimeMs) * 1000);
+        }
+    }
+
+    // Event thread, via EventClassifier
+    private final EventClassifier.UsageListener usageListener = new EventClassifier.UsageListener() {
+        @Override
+        public void onSessionEnded(String packageName, long startMs, long endMs) {
+            long duration = endMs - startMs;
+            // Persist first so the session survives even if nobody is listening.
+            // Recorded even with tracking off: otherwise the ingestor would see no
+            // accessibility time and correct limits by the full UsageStats total
+            if (usageLedger != null) {
+                usageLedger.append(packageName, startMs, duration, UsageLedger.SOURCE_ACCESSIBILITY);
             }
+            if (usageTracking) {
+                // Delivered to JS in batches by AppBlockerPlugin
+                UsageCoalescer.record(packageName, duration);
+            }
+            if (usageLimits != null) {
+                usageLimits.onSessionEnded(packageName, duration, endMs);
+            }
+        }
+
+        @Override
+        public void onForegroundChanged(String packageName, long sinceMs) {
+            scheduleLimitCheck();
+            armCheckpoint();
         }
+    };
+
+    // Arms a timer for the moment the foreground app's daily budget runs out,
+    // so it gets blocked mid-session without waiting for another window event.
+    // Event thread.
+    private void scheduleLimitCheck() {
+        eventHandler.removeCallbacks(limitCheckRunnable);
+        String currentPackage = classifier.getForegroundPackage();
+        if (usageLimits == null || currentPackage.isEmpty() || classifier.isExempt(currentPackage)) {
+            return;
+        }
+        long remaining = usageLimits.msUntilExhausted(currentPackage, classifier.getForegroundSince(),
+                System.currentTimeMillis());
+        if (remaining == UsageLimitEngine.NO_LIMIT) {
+            return;
+        }
+        eventHandler.postDelayed(limitCheckRunnable, remaining);
     }
 
-    private void sendUsageUpdate(String packageName, long durationMs) {
-        Intent intent = new Intent("com.omit.app.USAGE_UPDATE");
-        intent.setPackage(getPackageName());
-        intent.putExtra("packageName", packageName);
-        intent.putExtra("duration", durationMs);
-        sendBroadcast(intent);
+    // Event thread
+    private void onLimitCheck() {
+        String currentPackage = classifier.getForegroundPackage();
+        if (usageLimits == null || currentPackage.isEmpty()) {
+            return;
+        }
+        usageLimits.onTick(currentPackage, classifier.getForegroundSince(), System.currentTimeMillis());
+        if (Blocklist.current().contains(currentPackage)) {
+            long nowUptimeMs = SystemClock.uptimeMillis();
+            long nowNanos = System.nanoTime();
+            overlayHandler.post(() -> onBlockCandidate(currentPackage, nowUptimeMs, nowUptimeMs, nowNanos, false));
+        } else {
+            // Not exhausted yet (e.g. the timer fired early); check again later
+            scheduleLimitCheck();
+        }
     }
 
     private void cancelPendingOverlay() {
@@ -141,47 +356,54 @@ public class AppBlockerService extends AccessibilityService {
             overlayHandler.removeCallbacks(pendingOverlayRunnable);
             pendingOverlayRunnable = null;
         }
-        pendingBlockedPackage = "";
     }
 
-    private void scheduleOverlay(String packageName) {
+    private void scheduleOverlay(String packageName, long delayMs) {
         // Cancel any existing pending overlay
-        if (pendingOverlayRunnable != null) {
-            overlayHandler.removeCallbacks(pendingOverlayRunnable);
-        }
+        cancelPendingOverlay();
 
         pendingOverlayRunnable = () -> {
-            // Check per-package cooldown so that dismissing app A doesn't give app B
-            // a free window to bypass blocking.
-            Long lastDismissed = lastDismissedTimeByPackage.get(packageName);
-            if (lastDismissed != null && System.currentTimeMillis() - lastDismissed < COOLDOWN_MS) {
-                pendingBlockedPackage = "";
-                return;
+            pendingOverlayRunnable = null;
+            firedNanos = System.nanoTime();
+            boolean shown = overlayState.onDebounceFired(packageName);
+            if (EventTraceRecorder.isEnabled()) {
+                traceRecorder.record(SystemClock.uptimeMillis(), EventTraceRecorder.TYPE_OVERLAY, packageName,
+                        shown ? EventTraceRecorder.DECISION_SHOWN : EventTraceRecorder.DECISION_COOLDOWN);
             }
-
-            lastBlockedPackage = packageName;
-            showBlockingOverlay(packageName);
-            pendingBlockedPackage = "";
         };
 
-        // Schedule the overlay to appear after debounce delay
-        overlayHandler.postDelayed(pendingOverlayRunnable, DEBOUNCE_DELAY_MS);
+        // Schedule the overlay to appear once this app's launch burst has settled
+        overlayHandler.postDelayed(pendingOverlayRunnable, delayMs);
     }
 
     private void showBlockingOverlay(String packageName) {
+        BlockingMetrics.DEBOUNCE.recordNanos(firedNanos - pendingReceivedNanos);
+
+        // Draw the overlay from this process directly; no intent or service hop
+        if (overlay != null && overlay.show(packageName)) {
+            BlockingMetrics.recordAttached(pendingEventUptimeMs, pendingReceivedUptimeMs,
+                    pendingReceivedNanos, firedNanos, firedNanos, System.nanoTime());
+            return;
+        }
+
+        // Accessibility overlay unavailable; fall back to the overlay service
         Intent intent = new Intent(this, BlockingOverlayService.class);
         intent.putExtra("blocked_package", packageName);
+        intent.putExtra(BlockingMetrics.EXTRA_EVENT_UPTIME_MS, pendingEventUptimeMs);
+        intent.putExtra(BlockingMetrics.EXTRA_RECEIVED_UPTIME_MS, pendingReceivedUptimeMs);
+        intent.putExtra(BlockingMetrics.EXTRA_RECEIVED_NANOS, pendingReceivedNanos);
+        intent.putExtra(BlockingMetrics.EXTRA_FIRED_NANOS, firedNanos);
         intent.setAction("SHOW_OVERLAY");
         startService(intent);
     }
 
     // Called when overlay is dismissed to start per-package cooldown
     public void onOverlayDismissed() {
-        if (!lastBlockedPackage.isEmpty()) {
-            lastDismissedTimeByPackage.put(lastBlockedPackage, System.currentTimeMillis());
+        if (EventTraceRecorder.isEnabled()) {
+            traceRecorder.record(SystemClock.uptimeMillis(), EventTraceRecorder.TYPE_OVERLAY,
+                    overlayState.getLastBlockedPackage(), EventTraceRecorder.DECISION_DISMISSED);
         }
-        lastBlockedPackage = "";
-        cancelPendingOverlay();
+        overlayState.onDismissed();
     }
 
     @Override
@@ -196,30 +418,58 @@ public class AppBlockerService extends AccessibilityService {
 
         // Cache launcher packages for home screen detection
         launcherPackages = getLauncherPackages();
-
-        // Load initial state from SharedPreferences in case plugin hasn't synced yet
-        android.content.SharedPreferences prefs = getSharedPreferences("OmitAppBlockerPrefs",
-                android.content.Context.MODE_PRIVATE);
-        java.util.Set<String> blockedSet = prefs.getStringSet("blocked_apps", new java.util.HashSet<>());
-        if (blockedSet != null && !blockedSet.isEmpty()) {
-            // Note: Plugin.blockedPackages is static, so we update it here if empty
-            if (AppBlockerPlugin.getBlockedPackages().isEmpty()) {
-                AppBlockerPlugin.getBlockedPackages().addAll(blockedSet);
-            }
+        classifier = new EventClassifier(getPackageName(), launcherPackages,
+                packageName -> Blocklist.current().contains(packageName), usageListener);
+
+        // Inflated once here so showing a block is just addView()
+        overlay = new BlockingOverlay(this, WindowManager.LayoutParams.TYPE_ACCESSIBILITY_OVERLAY);
+        // Queued on the overlay's shared label thread, not a thread per connect
+        overlay.warmLabels();
+
+        traceRecorder = EventTraceRecorder.get(this);
+        eventThread = new HandlerThread("AppBlockerEvents", Process.THREAD_PRIORITY_FOREGROUND);
+        eventThread.start();
+        eventHandler = new Handler(eventThread.getLooper());
+
+        // Opened on the event thread: the ledger maps its files, loads or rebuilds
+        // the rollups and recovers a crashed session, and the limit engine reads
+        // today's ledger. Events queued meanwhile see them null and skip usage.
+        eventHandler.post(this::openUsageStores);
+        // Catches up on usage from while the service was disconnected, then every interval
+        eventHandler.post(usageIngestRunnable);
+
+        // Load initial state from the config store in case plugin hasn't synced yet
+        config = ConfigStore.get(this);
+        List<String> blockedSet = config.current().getBlockedApps();
+        if (!blockedSet.isEmpty()) {
+            // Only seeds the blocklist if the plugin hasn't published one in this process
+            Blocklist.setLayerIfUnset(Blocklist.LAYER_USER, blockedSet);
+        }
+        try {
+            Blocklist.setRulesIfUnset(BlockRules.compile(config.current().getRules(), PackageTraits.get(this)));
+        } catch (IllegalArgumentException e) {
+            Log.e("AppBlockerService", "Ignoring unreadable block rules", e);
         }
 
-        AccessibilityServiceInfo info = new AccessibilityServiceInfo();
-        // Only subscribe to the two event types we actually handle.
-        // TYPE_WINDOW_CONTENT_CHANGED fires on every scroll/text-input and was
-        // generating thousands of unnecessary onAccessibilityEvent() calls.
-        info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED |
-                AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED;
-        info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC;
-        // 0 = no minimum gap between same-type events → react as fast as possible
-        info.notificationTimeout = 0;
-        info.flags = AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS;
-
-        setServiceInfo(info);
+        // Also publishes the schedule layer if this connect started the process
+        schedules = BlockScheduleEngine.get(this);
+        schedules.setActiveListener(() -> overlayHandler.post(this::updateMonitoring));
+
+        monitoring = shouldMonitor();
+        usageTracking = config.current().usageTracking;
+        config.addListener(configListener);
+        Blocklist.setListener(() -> {
+            overlayHandler.post(this::dropUnblockedOverlay);
+            // Packages added by any layer get their label before they're first blocked
+            overlay.warmLabels();
+        });
+        surfaceRules = SurfaceRules.get(this);
+        surfaceRules.setChangeListener(() -> eventHandler.post(() -> {
+            if (monitoring) {
+                updateSurfaceTarget(classifier.getForegroundPackage());
+            }
+        }));
+        applySubscription();
     }
 
     private Set<String> getLauncherPackages() {
@@ -233,18 +483,159 @@ public class AppBlockerService extends AccessibilityService {
         return launchers;
     }
 
+    private boolean shouldMonitor() {
+        return config.current().monitoring || schedules.isActive();
+    }
+
+    private void updateMonitoring() {
+        if (config != null) {
+            setMonitoring(shouldMonitor());
+        }
+    }
+
+    private void setMonitoring(boolean enabled) {
+        if (enabled == monitoring) {
+            return;
+        }
+        monitoring = enabled;
+        if (!enabled) {
+            // A schedule ending or JS turning monitoring off releases the user now
+            overlayState.onReset();
+            cancelPendingOverlay();
+            if (overlay != null) {
+                overlay.hide();
+            }
+            // Close the open session now; no events will arrive to end it
+            eventHandler.post(this::closeSession);
+        }
+        applySubscription();
+    }
+
+    // Main thread: a package that left the blocklist stops being blocked at once
+    private void dropUnblockedOverlay() {
+        BlocklistSnapshot blocklist = Blocklist.current();
+        String pending = overlayState.getPendingPackage();
+        String shown = overlay != null ? overlay.getShownPackage() : null;
+        boolean pendingUnblocked = !pending.isEmpty() && !blocklist.contains(pending);
+        boolean shownUnblocked = shown != null && !blocklist.contains(shown);
+        if (pendingUnblocked || shownUnblocked) {
+            overlayState.onReset();
+        }
+        if (shownUnblocked) {
+            overlay.hide();
+        }
+    }
+
+    // Event thread
+    private void closeSession() {
+        eventHandler.removeCallbacks(limitCheckRunnable);
+        eventHandler.removeCallbacks(checkpointRunnable);
+        checkpointArmed = false;
+        surfaceTarget = null;
+        classifier.endSession(System.currentTimeMillis());
+        if (usageLedger != null) {
+            usageLedger.clearOpenSession();
+        }
+    }
+
+    // Event thread
+    private void openUsageStores() {
+        usageLedger = UsageLedger.get(this);
+        usageLimits = UsageLimitEngine.get(this);
+        usageLimits.setPolicyListener(() -> eventHandler.post(this::scheduleLimitCheck));
+        usageStatsIngestor = UsageStatsIngestor.get(this);
+        // A session that began before the limits were loaded still gets its timer
+        scheduleLimitCheck();
+    }
+
+    // Event thread
+    private void onUsageIngest() {
+        usageStatsIngestor.ingest();
+        eventHandler.postDelayed(usageIngestRunnable, USAGE_INGEST_INTERVAL_MS);
+    }
+
+    // Any thread: coalesces bursts of surface target changes into one update
+    private void requestSubscriptionUpdate() {
+        overlayHandler.removeCallbacks(subscriptionRunnable);
+        overlayHandler.post(subscriptionRunnable);
+    }
+
+    // Subscribes to exactly what the current state needs; nothing while dormant.
+    // Main thread.
+    private void applySubscription() {
+        // Every app's window events while monitoring: a switch to any app is
+        // what resets a pending block and ends the ledger's open session
+        String[] packages = monitoring ? null : new String[] { getPackageName() };
+        boolean content = monitoring && surfaceTarget != null;
+        if (subscribed && monitoring == subscribedMonitoring && content == subscribedContent
+                && Arrays.equals(packages, subscribedPackages)) {
+            return;
+        }
+        AccessibilityServiceInfo info = new AccessibilityServiceInfo();
+        if (monitoring) {
+            // Window changes are the only events we act on. Notifications used
+            // to checkpoint long sessions, which a timer now does without
+            // waking up for every notification on the device, and
+            // TYPE_WINDOW_CONTENT_CHANGED fires on every scroll/text-input, so
+            // it's only added while an app with surface rules is in front.
+            info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+            if (content) {
+                info.eventTypes |= AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+            }
+        } else {
+            // No event types; also scope to our own package in case a platform
+            // treats an empty mask loosely
+            info.eventTypes = 0;
+        }
+        info.packageNames = packages;
+        info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC;
+        // 0 = no minimum gap between same-type events → react as fast as possible
+        info.notificationTimeout = 0;
+        info.flags = AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS;
+        if (content) {
+            // Surface rules match on resource names, which are only reported on request
+            info.flags |= AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS;
+        }
+
+        setServiceInfo(info);
+        subscribed = true;
+        subscribedMonitoring = monitoring;
+        subscribedContent = content;
+        subscribedPackages = packages;
+    }
+
     @Override
     public void onDestroy() {
         // --- FINAL USAGE TRACKING ---
-        if (lastAppChangeTime > 0 && !currentPackage.isEmpty()) {
-            long now = System.currentTimeMillis();
-            long duration = now - lastAppChangeTime;
-            if (duration > 1000) {
-                sendUsageUpdate(currentPackage, duration);
-            }
+        if (eventThread != null) {
+            // Queued events are processed first, then the session is closed. The
+            // usage stores were opened on this thread, so they're released here too
+            eventHandler.post(() -> {
+                if (usageLimits != null) {
+                    usageLimits.setPolicyListener(null);
+                }
+                closeSession();
+            });
+            eventThread.quitSafely();
         }
+        cancelPendingOverlay();
         // ---------------------------
 
+        if (overlay != null) {
+            overlay.hide();
+        }
+        if (config != null) {
+            config.removeListener(configListener);
+        }
+        Blocklist.setListener(null);
+        overlayHandler.removeCallbacks(subscriptionRunnable);
+        if (schedules != null) {
+            schedules.setActiveListener(null);
+        }
+        if (surfaceRules != null) {
+            surfaceRules.setChangeListener(null);
+        }
+
         super.onDestroy();
         instance = null;
     }
@@ -0,0 +1,187 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Two-tier cache of rendered app icons.
+ *
+ * Icons only change when a package is updated, so rendered PNGs are kept in
+ * an in-memory LRU and on disk, keyed by package name and the package's
+ * lastUpdateTime. Entries are dropped when {@link PackageCatalog}'s package
+ * broadcast receiver sees a package change; the version in the disk key
+ * covers updates that happened while the app wasn't running.
+ *
+ * Renderings at other sizes or formats (see {@link AppIconRenderer#variant})
+ * are cached alongside the default PNG and invalidated with it.
+ */
+public final class AppIconCache {
+
+    private static final String TAG = "AppIconCache";
+    private static final String DIR_NAME = "app_icons";
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final String DEFAULT_VARIANT = "png";
+
+    private static AppIconCache instance;
+
+    private final File dir;
+    private final LruCache<String, Entry> memory = new LruCache<String, Entry>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Entry value) {
+            return value.png.length;
+        }
+    };
+
+    public interface Renderer {
+        byte[] render() throws Exception;
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] png;
+
+        Entry(long version, byte[] png) {
+            this.version = version;
+            this.png = png;
+        }
+    }
+
+    private AppIconCache(Context context) {
+        dir = new File(context.getApplicationContext().getCacheDir(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create icon cache directory");
+        }
+    }
+
+    public static synchronized AppIconCache get(Context context) {
+        if (instance == null) {
+            instance = new AppIconCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached icon from memory as Base64, regardless of version, or
+     * null. This never touches PackageManager; invalidation keeps memory
+     * entries current.
+     */
+    public String getIfPresent(String packageName) {
+        Entry entry = memory.get(packageName);
+        return entry != null ? Base64.encodeToString(entry.png, Base64.NO_WRAP) : null;
+    }
+
+    /**
+     * Returns the icon for the given package version as Base64.
+     */
+    public String get(String packageName, long version, Renderer renderer) throws Exception {
+        return Base64.encodeToString(getPng(packageName, version, renderer), Base64.NO_WRAP);
+    }
+
+    /**
+     * Returns the encoded icon bytes for the given package version, rendering
+     * and storing them only if neither tier has them.
+     */
+    public byte[] getPng(String packageName, long version, Renderer renderer) throws Exception {
+        return getBytes(packageName, DEFAULT_VARIANT, version, renderer);
+    }
+
+    /**
+     * Like getPng for any rendering variant, such as "48.webp".
+     */
+    public byte[] getBytes(String packageName, String variant, long version, Renderer renderer) throws Exception {
+        String key = DEFAULT_VARIANT.equals(variant) ? packageName : packageName + "#" + variant;
+        Entry entry = memory.get(key);
+        if (entry != null && entry.version == version) {
+            return entry.png;
+        }
+
+        File file = fileFor(packageName, version, variant);
+        byte[] png = readFile(file);
+        if (png == null) {
+            png = renderer.render();
+            deleteStaleFiles(packageName, version);
+            writeFile(file, png);
+        }
+
+        memory.put(key, new Entry(version, png));
+        return png;
+    }
+
+    public void invalidate(String packageName) {
+        memory.remove(packageName);
+        String variantPrefix = packageName + "#";
+        for (String key : memory.snapshot().keySet()) {
+            if (key.startsWith(variantPrefix)) {
+                memory.remove(key);
+            }
+        }
+        deleteFiles(packageName, null);
+    }
+
+    private File fileFor(String packageName, long version, String variant) {
+        return new File(dir, packageName + "@" + version + "." + variant);
+    }
+
+    // Drops renderings of other versions, keeping this version's other variants
+    private void deleteStaleFiles(String packageName, long version) {
+        deleteFiles(packageName, packageName + "@" + version + ".");
+    }
+
+    private void deleteFiles(String packageName, String keepPrefix) {
+        String prefix = packageName + "@";
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix)
+                && (keepPrefix == null || !name.startsWith(keepPrefix)));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete cached icon " + file.getName());
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached icon " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) {
+        // Write to a temp file first so a crash never leaves a truncated icon behind
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache icon " + file.getName(), e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Failed to commit cached icon " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.omit.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Renders app icon drawables into the encoded bytes served to the WebView.
+ *
+ * The drawable is drawn straight at the target size, so there's no
+ * full-resolution intermediate and no scaled copy. Each rendering thread
+ * keeps one bitmap, canvas and output buffer and reuses them for every icon
+ * of the same size; only the encoded bytes are allocated per icon.
+ */
+public final class AppIconRenderer {
+
+    // Resize to reduce payload size (e.g., 96x96)
+    public static final int DEFAULT_SIZE = 96;
+    public static final int MIN_SIZE = 16;
+    public static final int MAX_SIZE = 512;
+
+    public static final int FORMAT_PNG = 1;
+    public static final int FORMAT_WEBP = 2;
+
+    // Lossy; icons are small and flat, so artifacts aren't visible at this quality
+    private static final int WEBP_QUALITY = 80;
+
+    private static final class Scratch {
+        Bitmap bitmap;
+        Canvas canvas;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private AppIconRenderer() {
+    }
+
+    public static byte[] renderPng(Drawable drawable) {
+        return render(drawable, DEFAULT_SIZE, FORMAT_PNG);
+    }
+
+    public static byte[] render(Drawable drawable, int size, int format) {
+        if (drawable == null) return new byte[0];
+
+        Scratch scratch = SCRATCH.get();
+        if (scratch.bitmap == null || scratch.bitmap.getWidth() != size) {
+            if (scratch.bitmap != null) {
+                scratch.bitmap.recycle();
+            }
+            scratch.bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            scratch.canvas = new Canvas(scratch.bitmap);
+        } else {
+            scratch.bitmap.eraseColor(Color.TRANSPARENT);
+        }
+
+        // Bitmap and adaptive icons alike scale (with filtering) as they draw
+        drawable.setBounds(0, 0, size, size);
+        drawable.draw(scratch.canvas);
+
+        scratch.out.reset();
+        if (format == FORMAT_WEBP) {
+            scratch.bitmap.compress(webpFormat(), WEBP_QUALITY, scratch.out);
+        } else {
+            scratch.bitmap.compress(Bitmap.CompressFormat.PNG, 100, scratch.out);
+        }
+        return scratch.out.toByteArray();
+    }
+
+    /** Parses the JS format name; returns 0 if it isn't one. */
+    public static int parseFormat(String name) {
+        if ("png".equals(name)) return FORMAT_PNG;
+        if ("webp".equals(name)) return FORMAT_WEBP;
+        return 0;
+    }
+
+    public static String mimeType(int format) {
+        return format == FORMAT_WEBP ? "image/webp" : "image/png";
+    }
+
+    /**
+     * Cache variant name for a size and format: "png" for the default
+     * rendering, which keeps its existing cache files, otherwise e.g. "48.webp".
+     */
+    public static String variant(int size, int format) {
+        String extension = format == FORMAT_WEBP ? "webp" : "png";
+        return size == DEFAULT_SIZE && format == FORMAT_PNG ? extension : size + "." + extension;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        // Before API 30, WEBP is lossy for any quality below 100
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,100 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebViewClient;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves app icons to the WebView's image loader straight from
+ * {@link AppIconCache}, so icons never cross the bridge as Base64.
+ *
+ * Icons live under the app's own origin ({@code <localUrl>/_omit/icon/<package>?v=<lastUpdateTime>})
+ * rather than a custom scheme, so they load without CORS or mixed-content
+ * issues. The version in the query string makes each URL immutable, letting
+ * the WebView cache them indefinitely. Optional {@code size} and
+ * {@code format} parameters select another rendering, cached as its own
+ * variant. All other requests go through Capacitor's normal handling.
+ */
+public class AppIconWebViewClient extends BridgeWebViewClient {
+
+    private static final String TAG = "AppIconWebViewClient";
+    static final String ICON_PATH = "_omit/icon";
+
+    private final Context context;
+    private final String localHost;
+
+    public AppIconWebViewClient(Bridge bridge) {
+        super(bridge);
+        this.context = bridge.getContext().getApplicationContext();
+        this.localHost = Uri.parse(bridge.getLocalUrl()).getHost();
+    }
+
+    public static String iconUrl(Bridge bridge, String packageName, long version) {
+        return bridge.getLocalUrl() + "/" + ICON_PATH + "/" + Uri.encode(packageName) + "?v=" + version;
+    }
+
+    /** Like iconUrl(bridge, packageName, version) for a size and AppIconRenderer format. */
+    public static String iconUrl(Bridge bridge, String packageName, long version, int size, int format) {
+        String url = iconUrl(bridge, packageName, version);
+        if (size != AppIconRenderer.DEFAULT_SIZE) {
+            url += "&size=" + size;
+        }
+        if (format == AppIconRenderer.FORMAT_WEBP) {
+            url += "&format=webp";
+        }
+        return url;
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        Uri url = request.getUrl();
+        List<String> segments = url.getPathSegments();
+        if (segments.size() == 3 && "_omit".equals(segments.get(0)) && "icon".equals(segments.get(1))
+                && localHost != null && localHost.equals(url.getHost())) {
+            return serveIcon(segments.get(2), url.getQueryParameter("v"), url.getQueryParameter("size"),
+                    url.getQueryParameter("format"));
+        }
+        return super.shouldInterceptRequest(view, request);
+    }
+
+    // Runs on the WebView's IO thread, so rendering a cache miss here doesn't block the UI
+    private WebResourceResponse serveIcon(String packageName, String versionParam, String sizeParam,
+                                          String formatParam) {
+        Map<String, String> headers = new HashMap<>();
+        int format = formatParam != null ? AppIconRenderer.parseFormat(formatParam) : AppIconRenderer.FORMAT_PNG;
+        String mimeType = AppIconRenderer.mimeType(format);
+        try {
+            int size = sizeParam != null ? Integer.parseInt(sizeParam) : AppIconRenderer.DEFAULT_SIZE;
+            if (format == 0 || size < AppIconRenderer.MIN_SIZE || size > AppIconRenderer.MAX_SIZE) {
+                return new WebResourceResponse(mimeType, null, 400, "Bad Request", headers,
+                        new ByteArrayInputStream(new byte[0]));
+            }
+            PackageManager pm = context.getPackageManager();
+            long version = versionParam != null
+                    ? Long.parseLong(versionParam)
+                    : pm.getPackageInfo(packageName, 0).lastUpdateTime;
+            byte[] icon = AppIconCache.get(context).getBytes(packageName, AppIconRenderer.variant(size, format),
+                    version, () -> AppIconRenderer.render(pm.getApplicationIcon(packageName), size, format));
+
+            headers.put("Cache-Control", versionParam != null ? "public, max-age=31536000, immutable" : "no-cache");
+            return new WebResourceResponse(mimeType, null, 200, "OK", headers, new ByteArrayInputStream(icon));
+        } catch (PackageManager.NameNotFoundException | NumberFormatException e) {
+            return new WebResourceResponse(mimeType, null, 404, "Not Found", headers, new ByteArrayInputStream(new byte[0]));
+        } catch (Exception e) {
+            Log.e(TAG, "Error serving icon for " + packageName, e);
+            return new WebResourceResponse(mimeType, null, 500, "Error", headers, new ByteArrayInputStream(new byte[0]));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.omit.app;
+
+import com.omit.core.PackagePatternMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Blocking rules that match packages by pattern or attribute rather than by
+ * exact name: prefix, glob, app category and installer.
+ *
+ * Prefix and glob rules are compiled into one {@link PackagePatternMatcher}
+ * trie. Category and installer rules compare against {@link PackageTraits},
+ * which resolves each package once and caches it. Matching a window change
+ * therefore costs one trie walk plus at most one hash lookup, however many
+ * rules there are. Immutable; published to the service through
+ * {@link BlocklistSnapshot}.
+ */
+public final class BlockRules {
+
+    public static final int TYPE_PREFIX = 1;
+    public static final int TYPE_GLOB = 2;
+    public static final int TYPE_CATEGORY = 3;
+    public static final int TYPE_INSTALLER = 4;
+
+    private static final String[] TYPE_NAMES = { null, "prefix", "glob", "category", "installer" };
+
+    // Index is the ApplicationInfo.CATEGORY_* value
+    private static final String[] CATEGORY_NAMES = {
+            "game", "audio", "video", "image", "social", "news", "maps", "productivity", "accessibility"
+    };
+
+    public static final BlockRules EMPTY = new BlockRules(Collections.emptyList(), PackagePatternMatcher.EMPTY,
+            new boolean[0], Collections.emptySet(), null);
+
+    public static final class Rule {
+        public final int type;
+        public final String value;
+
+        public Rule(int type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        public String getTypeName() {
+            return TYPE_NAMES[type];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Rule)) {
+                return false;
+            }
+            Rule other = (Rule) o;
+            return type == other.type && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + value.hashCode();
+        }
+    }
+
+    private final List<Rule> rules;
+    private final PackagePatternMatcher patterns;
+    private final boolean[] categories;
+    private final Set<String> installers;
+    private final PackageTraits traits;
+    private final boolean usesTraits;
+
+    private BlockRules(List<Rule> rules, PackagePatternMatcher patterns, boolean[] categories,
+                       Set<String> installers, PackageTraits traits) {
+        this.rules = rules;
+        this.patterns = patterns;
+        this.categories = categories;
+        this.installers = installers;
+        this.traits = traits;
+        boolean anyCategory = false;
+        for (boolean category : categories) {
+            anyCategory |= category;
+        }
+        this.usesTraits = anyCategory || !installers.isEmpty();
+    }
+
+    /**
+     * Parses a rule from its JS form. Throws IllegalArgumentException for an
+     * unknown type, an unknown category or a malformed pattern.
+     */
+    public static Rule parse(String type, String value) {
+        for (int t = 1; t < TYPE_NAMES.length; t++) {
+            if (TYPE_NAMES[t].equals(type)) {
+                Rule rule = new Rule(t, value);
+                // Fail on bad input here rather than when the list is compiled
+                compile(Collections.singletonList(rule), null);
+                return rule;
+            }
+        }
+        throw new IllegalArgumentException("Unknown rule type \"" + type + "\"");
+    }
+
+    public static BlockRules compile(List<Rule> rules, PackageTraits traits) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        PackagePatternMatcher.Builder patterns = new PackagePatternMatcher.Builder();
+        boolean[] categories = new boolean[CATEGORY_NAMES.length];
+        Set<String> installers = new HashSet<>();
+        for (Rule rule : rules) {
+            switch (rule.type) {
+                case TYPE_PREFIX:
+                    patterns.addPrefix(rule.value);
+                    break;
+                case TYPE_GLOB:
+                    patterns.addGlob(rule.value);
+                    break;
+                case TYPE_CATEGORY:
+                    categories[categoryOf(rule.value)] = true;
+                    break;
+                case TYPE_INSTALLER:
+                    installers.add(rule.value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown rule type " + rule.type);
+            }
+        }
+        return new BlockRules(Collections.unmodifiableList(new ArrayList<>(rules)), patterns.build(), categories,
+                installers, traits);
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public boolean matches(String packageName) {
+        if (patterns.matches(packageName)) {
+            return true;
+        }
+        if (!usesTraits || traits == null) {
+            return false;
+        }
+        PackageTraits.Traits t = traits.of(packageName);
+        return (t.category >= 0 && t.category < categories.length && categories[t.category])
+                || (t.installer != null && installers.contains(t.installer));
+    }
+
+    /** True if matching needs per-package traits, which are worth warming up. */
+    public boolean usesTraits() {
+        return usesTraits;
+    }
+
+    private static int categoryOf(String name) {
+        for (int i = 0; i < CATEGORY_NAMES.length; i++) {
+            if (CATEGORY_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown app category \"" + name + "\"");
+    }
+}
@@ -0,0 +1,267 @@
+package com.omit.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Enforces recurring time-of-day blocking windows (focus hours, bedtime) natively.
+ *
+ * Rules are uploaded once from JS and persisted. At every window boundary an
+ * exact alarm wakes {@link BlockScheduleReceiver}, which re-evaluates the rules
+ * and publishes the packages of all active windows into
+ * {@link Blocklist#LAYER_SCHEDULE}. The receiver also re-arms the alarm after a
+ * reboot or a time/time-zone change, so the WebView is never needed for
+ * enforcement. While any window is active, AppBlockerService monitors even if
+ * JS has monitoring switched off.
+ */
+public final class BlockScheduleEngine {
+
+    private static final String TAG = "BlockScheduleEngine";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String KEY_RULES = "block_schedule_rules";
+
+    public static final long NO_BOUNDARY = -1;
+
+    private static BlockScheduleEngine instance;
+
+    private final Context context;
+    private final List<Rule> rules = new ArrayList<>();
+    private Set<String> active = Collections.emptySet();
+    private long nextBoundary = NO_BOUNDARY;
+    private Runnable activeListener;
+
+    /**
+     * A weekly recurring window. days uses JS Date.getDay() numbering
+     * (0 = Sunday) and names the day a window starts on; a window whose end is
+     * not after its start runs past midnight.
+     */
+    public static final class Rule {
+        public final String id;
+        public final Set<String> packages;
+        public final Set<Integer> days;
+        public final int startMinute;
+        public final int endMinute;
+
+        Rule(String id, Set<String> packages, Set<Integer> days, int startMinute, int endMinute) {
+            this.id = id;
+            this.packages = packages;
+            this.days = days;
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+    }
+
+    private BlockScheduleEngine(Context context) {
+        this.context = context.getApplicationContext();
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String stored = prefs.getString(KEY_RULES, null);
+        if (stored != null) {
+            try {
+                parseRules(new JSONObject(stored));
+            } catch (JSONException e) {
+                Log.e(TAG, "Ignoring corrupt block schedule", e);
+            }
+        }
+    }
+
+    /** Returns the engine, evaluating and arming it the first time in this process. */
+    public static synchronized BlockScheduleEngine get(Context context) {
+        if (instance == null) {
+            instance = new BlockScheduleEngine(context);
+            instance.apply();
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the rules. Expected shape:
+     * {@code { rules: [{ id, packages: [], days: [0-6], start: "HH:mm", end: "HH:mm" }] }}
+     */
+    public void setRules(JSONObject schedule) throws JSONException {
+        synchronized (this) {
+            parseRules(schedule);
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().putString(KEY_RULES, schedule.toString()).apply();
+        }
+        apply();
+    }
+
+    /**
+     * Re-evaluates the rules for the current time, publishes the schedule layer
+     * and arms the alarm for the next boundary.
+     */
+    public void apply() {
+        Runnable listener = null;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Set<String> nowActive = new HashSet<>();
+            nextBoundary = evaluate(now, nowActive);
+            if (!nowActive.equals(active)) {
+                boolean wasActive = !active.isEmpty();
+                active = Collections.unmodifiableSet(nowActive);
+                Blocklist.setLayer(Blocklist.LAYER_SCHEDULE, nowActive);
+                if (wasActive != !nowActive.isEmpty()) {
+                    listener = activeListener;
+                }
+            }
+            armAlarm(nextBoundary);
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers a callback invoked when the schedule switches between having
+     * an active window and having none.
+     */
+    public synchronized void setActiveListener(Runnable listener) {
+        activeListener = listener;
+    }
+
+    /** True while at least one window with packages is active. */
+    public synchronized boolean isActive() {
+        return !active.isEmpty();
+    }
+
+    public synchronized Set<String> getActivePackages() {
+        return active;
+    }
+
+    public synchronized long getNextBoundary() {
+        return nextBoundary;
+    }
+
+    public synchronized List<Rule> getRules() {
+        return new ArrayList<>(rules);
+    }
+
+    // Collects the packages of windows containing now; returns the next start or end after now
+    private long evaluate(long now, Set<String> outActive) {
+        long next = NO_BOUNDARY;
+        Calendar today = Calendar.getInstance();
+        today.setTimeInMillis(now);
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+
+        // Yesterday for windows running past midnight, then a full week ahead
+        for (int offset = -1; offset <= 7; offset++) {
+            Calendar day = (Calendar) today.clone();
+            day.add(Calendar.DAY_OF_YEAR, offset);
+            int dayOfWeek = day.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+            for (Rule rule : rules) {
+                if (!rule.days.contains(dayOfWeek)) {
+                    continue;
+                }
+                long start = at(day, 0, rule.startMinute);
+                long end = at(day, rule.endMinute > rule.startMinute ? 0 : 1, rule.endMinute);
+                if (start <= now && now < end) {
+                    outActive.addAll(rule.packages);
+                }
+                if (start > now && (next == NO_BOUNDARY || start < next)) {
+                    next = start;
+                }
+                if (end > now && (next == NO_BOUNDARY || end < next)) {
+                    next = end;
+                }
+            }
+        }
+        return next;
+    }
+
+    private static long at(Calendar day, int addDays, int minuteOfDay) {
+        Calendar c = (Calendar) day.clone();
+        c.add(Calendar.DAY_OF_YEAR, addDays);
+        // Set through the fields so DST transitions resolve to local wall-clock time
+        c.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        c.set(Calendar.MINUTE, minuteOfDay % 60);
+        return c.getTimeInMillis();
+    }
+
+    private void armAlarm(long triggerAt) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        if (alarmManager == null) {
+            return;
+        }
+        Intent intent = new Intent(context, BlockScheduleReceiver.class)
+                .setAction(BlockScheduleReceiver.ACTION_BOUNDARY);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        if (triggerAt == NO_BOUNDARY) {
+            alarmManager.cancel(pendingIntent);
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        } else {
+            // Exact alarm access revoked; the receiver re-arms exactly once it's granted again
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        }
+    }
+
+    private void parseRules(JSONObject schedule) throws JSONException {
+        List<Rule> parsed = new ArrayList<>();
+        JSONArray rulesArray = schedule.optJSONArray("rules");
+        if (rulesArray != null) {
+            for (int i = 0; i < rulesArray.length(); i++) {
+                JSONObject rule = rulesArray.getJSONObject(i);
+                Set<String> packages = new HashSet<>();
+                JSONArray pkgs = rule.optJSONArray("packages");
+                if (pkgs != null) {
+                    for (int j = 0; j < pkgs.length(); j++) {
+                        packages.add(pkgs.getString(j));
+                    }
+                }
+                Set<Integer> days = new HashSet<>();
+                JSONArray daysArray = rule.optJSONArray("days");
+                if (daysArray != null) {
+                    for (int j = 0; j < daysArray.length(); j++) {
+                        int day = daysArray.getInt(j);
+                        if (day < 0 || day > 6) {
+                            throw new JSONException("Invalid day " + day);
+                        }
+                        days.add(day);
+                    }
+                }
+                parsed.add(new Rule(rule.optString("id", String.valueOf(i)), packages, days,
+                        parseMinute(rule.getString("start")), parseMinute(rule.getString("end"))));
+            }
+        }
+        rules.clear();
+        rules.addAll(parsed);
+    }
+
+    private static int parseMinute(String time) throws JSONException {
+        String[] parts = time.split(":");
+        try {
+            if (parts.length == 2) {
+                int hour = Integer.parseInt(parts[0]);
+                int minute = Integer.parseInt(parts[1]);
+                if (hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59) {
+                    return hour * 60 + minute;
+                }
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new JSONException("Invalid time \"" + time + "\", expected HH:mm");
+    }
+}
@@ -0,0 +1,22 @@
+package com.omit.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Wakes {@link BlockScheduleEngine} at schedule boundaries, and re-arms it
+ * after a reboot, an app update, a clock or time-zone change, or a change in
+ * exact alarm access.
+ */
+public class BlockScheduleReceiver extends BroadcastReceiver {
+
+    public static final String ACTION_BOUNDARY = "com.omit.app.action.BLOCK_SCHEDULE_BOUNDARY";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        // Every trigger means the same thing: work out what's active now and
+        // arm the next boundary against the current clock and time zone
+        BlockScheduleEngine.get(context).apply();
+    }
+}
@@ -0,0 +1,68 @@
+package com.omit.app;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-stage latency histograms for the path from a blocked app's window event
+ * to the overlay covering it.
+ *
+ * <ul>
+ *   <li>dispatch - AccessibilityEvent.getEventTime() until onAccessibilityEvent runs</li>
+ *   <li>debounce - first event of the launch until the debounce runnable fires</li>
+ *   <li>handoff - debounce firing until BlockingOverlayService handles the intent
+ *       (zero when AppBlockerService draws the overlay itself)</li>
+ *   <li>attach - start of the show until windowManager.addView returns</li>
+ *   <li>total - event time until the overlay is attached</li>
+ * </ul>
+ */
+public final class BlockingMetrics {
+
+    public static final LatencyHistogram DISPATCH = new LatencyHistogram();
+    public static final LatencyHistogram DEBOUNCE = new LatencyHistogram();
+    public static final LatencyHistogram HANDOFF = new LatencyHistogram();
+    public static final LatencyHistogram ATTACH = new LatencyHistogram();
+    public static final LatencyHistogram TOTAL = new LatencyHistogram();
+
+    // Intent extras carrying the timestamps across the service hop
+    static final String EXTRA_EVENT_UPTIME_MS = "metrics_event_uptime_ms";
+    static final String EXTRA_RECEIVED_UPTIME_MS = "metrics_received_uptime_ms";
+    static final String EXTRA_RECEIVED_NANOS = "metrics_received_nanos";
+    static final String EXTRA_FIRED_NANOS = "metrics_fired_nanos";
+
+    private BlockingMetrics() {
+    }
+
+    public static Map<String, LatencyHistogram> stages() {
+        Map<String, LatencyHistogram> stages = new LinkedHashMap<>();
+        stages.put("dispatch", DISPATCH);
+        stages.put("debounce", DEBOUNCE);
+        stages.put("handoff", HANDOFF);
+        stages.put("attach", ATTACH);
+        stages.put("total", TOTAL);
+        return stages;
+    }
+
+    /**
+     * Records the stages after the debounce, once the overlay is attached.
+     * eventUptimeMs and receivedUptimeMs are in the SystemClock.uptimeMillis()
+     * time base used by AccessibilityEvent; the rest are System.nanoTime().
+     */
+    public static void recordAttached(long eventUptimeMs, long receivedUptimeMs, long receivedNanos,
+                                      long firedNanos, long startNanos, long attachedNanos) {
+        if (firedNanos > 0) {
+            HANDOFF.recordNanos(startNanos - firedNanos);
+        }
+        ATTACH.recordNanos(attachedNanos - startNanos);
+        if (eventUptimeMs > 0 && receivedNanos > 0) {
+            long dispatchMicros = (receivedUptimeMs - eventUptimeMs) * 1000;
+            TOTAL.recordMicros(dispatchMicros + (attachedNanos - receivedNanos) / 1000);
+        }
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : stages().values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.omit.app;
+
+import android.accessibilityservice.AccessibilityService;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.PixelFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The blocking overlay view and its window, independent of who hosts it.
+ *
+ * AppBlockerService owns one as a TYPE_ACCESSIBILITY_OVERLAY window and shows
+ * it straight from the debounce runnable. BlockingOverlayService keeps a
+ * TYPE_APPLICATION_OVERLAY one for the SHOW_OVERLAY intent fallback.
+ * The view is inflated once and only re-attached per block. Main thread only.
+ *
+ * Labels come from the package catalog or a cache, never from PackageManager
+ * on the main thread: a label that isn't known yet shows as the generic text
+ * and is filled in once labelExecutor has resolved it.
+ */
+public class BlockingOverlay {
+
+    // Shared by every overlay; its one thread exits when idle
+    private static final ThreadPoolExecutor labelExecutor = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, "OverlayLabels"));
+
+    static {
+        labelExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final Handler killHandler = new Handler(Looper.getMainLooper());
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final View overlayView;
+    private final TextView appNameView;
+    private final WindowManager.LayoutParams overlayParams;
+    private final Map<String, String> labelCache = new ConcurrentHashMap<>();
+
+    private boolean isVisible = false;
+    // Package the visible overlay is for, so a late label only lands on its own block
+    private String shownPackage;
+
+    /**
+     * @param context    the window context; for TYPE_ACCESSIBILITY_OVERLAY this
+     *                   must be the connected AccessibilityService itself
+     * @param windowType the WindowManager.LayoutParams type to attach as
+     */
+    public BlockingOverlay(Context context, int windowType) {
+        this.context = context;
+        windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+
+        LayoutInflater inflater = LayoutInflater.from(context);
+        overlayView = inflater.inflate(R.layout.overlay_blocked, null);
+        appNameView = overlayView.findViewById(R.id.blocked_app_name);
+
+        // Set up Go Back button - this will kill the blocked app
+        Button goBackButton = overlayView.findViewById(R.id.btn_go_back);
+        if (goBackButton != null) {
+            goBackButton.setOnClickListener(v -> {
+                notifyOverlayDismissed();
+                hide();
+                killBlockedApp();
+            });
+        }
+
+        // Set up Open Omit button - this will also kill the blocked app first
+        Button openOmitButton = overlayView.findViewById(R.id.btn_open_omit);
+        if (openOmitButton != null) {
+            openOmitButton.setOnClickListener(v -> {
+                notifyOverlayDismissed();
+                hide();
+                killBlockedAppThenOpenOmit();
+            });
+        }
+
+        overlayParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                windowType,
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
+                        WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED,
+                PixelFormat.TRANSLUCENT);
+
+        overlayParams.gravity = Gravity.CENTER;
+    }
+
+    public boolean isVisible() {
+        return isVisible;
+    }
+
+    /** Package the visible overlay is for, or null while hidden. */
+    public String getShownPackage() {
+        return shownPackage;
+    }
+
+    /**
+     * Attaches the overlay for packageName. Returns true if the overlay is
+     * showing afterwards, false if the window could not be added.
+     */
+    public boolean show(String packageName) {
+        if (isVisible) {
+            return true;
+        }
+
+        // Only the text changes between blocks
+        String appName = null;
+        if (appNameView != null && packageName != null) {
+            appName = cachedLabel(packageName);
+            setBlockedText(appName);
+        }
+
+        try {
+            windowManager.addView(overlayView, overlayParams);
+            isVisible = true;
+            shownPackage = packageName;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (isVisible && appNameView != null && packageName != null && appName == null) {
+            labelExecutor.execute(() -> {
+                String label = resolveLabel(packageName);
+                if (label != null) {
+                    mainHandler.post(() -> {
+                        if (isVisible && packageName.equals(shownPackage)) {
+                            setBlockedText(label);
+                        }
+                    });
+                }
+            });
+        }
+        return isVisible;
+    }
+
+    @SuppressLint("SetTextI18n")
+    private void setBlockedText(String appName) {
+        appNameView.setText(appName != null ? appName + " is blocked" : "This app is blocked");
+    }
+
+    public void hide() {
+        if (isVisible) {
+            try {
+                // Detach only; the view is kept for the next block
+                windowManager.removeView(overlayView);
+                isVisible = false;
+                shownPackage = null;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Resolves labels for the current blocklist on the label thread. Called
+     * on connect and whenever the blocklist is republished, so packages added
+     * later by any layer are known before they're blocked.
+     */
+    public void warmLabels() {
+        labelExecutor.execute(() -> {
+            PackageCatalog.get(context);
+            // Blocked system apps aren't in the catalog; resolve those up front too
+            for (String packageName : Blocklist.current().getPackages()) {
+                resolveLabel(packageName);
+            }
+        });
+    }
+
+    /** The label if the catalog or cache already has it, else null. Never blocks. */
+    private String cachedLabel(String packageName) {
+        PackageCatalog catalog = PackageCatalog.peek();
+        PackageCatalog.App app = catalog != null ? catalog.getApp(packageName) : null;
+        if (app != null) {
+            return app.appName;
+        }
+        return labelCache.get(packageName);
+    }
+
+    // Blocks on PackageManager; label thread only
+    private String resolveLabel(String packageName) {
+        String label = cachedLabel(packageName);
+        if (label != null) {
+            return label;
+        }
+        // Not a user app (or catalog not warm yet); fall back to PackageManager
+        try {
+            label = context.getPackageManager()
+                    .getApplicationLabel(context.getPackageManager().getApplicationInfo(packageName, 0))
+                    .toString();
+        } catch (Exception e) {
+            return null;
+        }
+        labelCache.put(packageName, label);
+        return label;
+    }
+
+    private void notifyOverlayDismissed() {
+        // Notify AppBlockerService to start cooldown timer
+        AppBlockerService service = AppBlockerService.getInstance();
+        if (service != null) {
+            service.onOverlayDismissed();
+        }
+    }
+
+    private void goToHomeScreen() {
+        Intent homeIntent = new Intent(Intent.ACTION_MAIN);
+        homeIntent.addCategory(Intent.CATEGORY_HOME);
+        homeIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(homeIntent);
+    }
+
+    /**
+     * Kills the blocked app by going to home screen.
+     * This is the most reliable way to "block" an app across all Android versions.
+     */
+    private void killBlockedApp() {
+        // First try to perform BACK action once for a smoother transition
+        AppBlockerService service = AppBlockerService.getInstance();
+        if (service != null) {
+            service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        }
+
+        // Always go to home screen after a tiny delay
+        killHandler.postDelayed(this::goToHomeScreen, 50);
+    }
+
+    /**
+     * Kills the blocked app and then opens Omit.
+     */
+    private void killBlockedAppThenOpenOmit() {
+        AppBlockerService service = AppBlockerService.getInstance();
+        if (service != null) {
+            service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        }
+
+        killHandler.postDelayed(this::openOmitApp, 100);
+    }
+
+    private void openOmitApp() {
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        context.startActivity(intent);
+    }
+}
@@ -1,200 +1,94 @@
 package com.omit.app;
 
-import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.graphics.PixelFormat;
 import android.os.Build;
 import android.os.IBinder;
-import android.view.Gravity;
-import android.view.LayoutInflater;
-import android.view.View;
 import android.view.WindowManager;
-import android.widget.Button;
-import android.widget.TextView;
-import android.os.Handler;
-import android.os.Looper;
-import android.accessibilityservice.AccessibilityService;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+/**
+ * Foreground service that keeps the process alive while monitoring is on.
+ *
+ * Blocks are normally drawn in-process by AppBlockerService as an
+ * accessibility overlay. This service only draws one when it receives a
+ * SHOW_OVERLAY intent, which is the fallback if that window can't be added.
+ */
 public class BlockingOverlayService extends Service {
 
-    private String currentBlockedPackage = null;
-    private final Handler killHandler = new Handler(Looper.getMainLooper());
-
     private static final String CHANNEL_ID = "app_blocker_channel";
     private static final int NOTIFICATION_ID = 1001;
 
-    private WindowManager windowManager;
-    private View overlayView;
-    private boolean isOverlayVisible = false;
+    // True from the first startForeground() until onDestroy()
+    private static volatile boolean running = false;
+
+    private Notification notification;
+    private boolean isForeground = false;
+    private BlockingOverlay overlay;
     private boolean isShowing = false; // Prevents duplicate show attempts
 
+    /** Whether the service is up and in the foreground, so starting it again would do nothing. */
+    public static boolean isRunning() {
+        return running;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
-        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        notification = createNotification();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        startForeground(NOTIFICATION_ID, createNotification());
+        long startNanos = System.nanoTime();
+        boolean showOverlay = intent != null && "SHOW_OVERLAY".equals(intent.getAction());
+
+        // startForegroundService() needs a matching startForeground(); overlay
+        // requests come through plain startService() and don't repost it
+        if (!isForeground || !showOverlay) {
+            startForeground(NOTIFICATION_ID, notification);
+            isForeground = true;
+            running = true;
+        }
 
-        if (intent != null && "SHOW_OVERLAY".equals(intent.getAction())) {
+        if (showOverlay) {
+            if (overlay == null) {
+                overlay = new BlockingOverlay(this, overlayWindowType());
+            }
             // Prevent duplicate show attempts
-            if (isOverlayVisible || isShowing) {
+            if (overlay.isVisible() || isShowing) {
                 return START_STICKY;
             }
             isShowing = true; // Set immediately before async view operations
             String blockedPackage = intent.getStringExtra("blocked_package");
-            showOverlay(blockedPackage);
-        }
-
-        return START_STICKY;
-    }
-
-    @SuppressLint("SetTextI18n")
-    private void showOverlay(String packageName) {
-        if (isOverlayVisible) {
+            boolean shown = overlay.show(blockedPackage);
             isShowing = false;
-            return;
-        }
-
-        // Store the blocked package for killing later
-        currentBlockedPackage = packageName;
-
-        LayoutInflater inflater = (LayoutInflater) getSystemService(LAYOUT_INFLATER_SERVICE);
-        overlayView = inflater.inflate(R.layout.overlay_blocked, null);
-
-        // Set app name in the overlay
-        TextView appNameView = overlayView.findViewById(R.id.blocked_app_name);
-        if (appNameView != null && packageName != null) {
-            try {
-                String appName = getPackageManager()
-                        .getApplicationLabel(getPackageManager().getApplicationInfo(packageName, 0))
-                        .toString();
-                appNameView.setText(appName + " is blocked");
-            } catch (Exception e) {
-                appNameView.setText("This app is blocked");
+            if (shown) {
+                BlockingMetrics.recordAttached(
+                        intent.getLongExtra(BlockingMetrics.EXTRA_EVENT_UPTIME_MS, 0),
+                        intent.getLongExtra(BlockingMetrics.EXTRA_RECEIVED_UPTIME_MS, 0),
+                        intent.getLongExtra(BlockingMetrics.EXTRA_RECEIVED_NANOS, 0),
+                        intent.getLongExtra(BlockingMetrics.EXTRA_FIRED_NANOS, 0),
+                        startNanos,
+                        System.nanoTime());
             }
         }
 
-        // Set up Go Back button - this will kill the blocked app
-        Button goBackButton = overlayView.findViewById(R.id.btn_go_back);
-        if (goBackButton != null) {
-            goBackButton.setOnClickListener(v -> {
-                notifyOverlayDismissed();
-                hideOverlay();
-                killBlockedApp();
-            });
-        }
-
-        // Set up Open Omit button - this will also kill the blocked app first
-        Button openOmitButton = overlayView.findViewById(R.id.btn_open_omit);
-        if (openOmitButton != null) {
-            openOmitButton.setOnClickListener(v -> {
-                notifyOverlayDismissed();
-                hideOverlay();
-                killBlockedAppThenOpenOmit();
-            });
-        }
-
-        int layoutType;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            layoutType = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
-        } else {
-            layoutType = WindowManager.LayoutParams.TYPE_PHONE;
-        }
-
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.MATCH_PARENT,
-                WindowManager.LayoutParams.MATCH_PARENT,
-                layoutType,
-                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
-                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
-                        WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED,
-                PixelFormat.TRANSLUCENT);
-
-        params.gravity = Gravity.CENTER;
-
-        try {
-            windowManager.addView(overlayView, params);
-            isOverlayVisible = true;
-            isShowing = false;
-        } catch (Exception e) {
-            isShowing = false;
-            e.printStackTrace();
-        }
-    }
-
-    private void hideOverlay() {
-        if (overlayView != null && isOverlayVisible) {
-            try {
-                windowManager.removeView(overlayView);
-                overlayView = null;
-                isOverlayVisible = false;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private void notifyOverlayDismissed() {
-        // Notify AppBlockerService to start cooldown timer
-        AppBlockerService service = AppBlockerService.getInstance();
-        if (service != null) {
-            service.onOverlayDismissed();
-        }
-    }
-
-    private void goToHomeScreen() {
-        Intent homeIntent = new Intent(Intent.ACTION_MAIN);
-        homeIntent.addCategory(Intent.CATEGORY_HOME);
-        homeIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        startActivity(homeIntent);
-    }
-
-    /**
-     * Kills the blocked app by going to home screen.
-     * This is the most reliable way to "block" an app across all Android versions.
-     */
-    private void killBlockedApp() {
-        // First try to perform BACK action once for a smoother transition
-        AppBlockerService service = AppBlockerService.getInstance();
-        if (service != null) {
-            service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-        }
-
-        // Always go to home screen after a tiny delay
-        killHandler.postDelayed(this::goToHomeScreen, 50);
-
-        currentBlockedPackage = null;
+        return START_STICKY;
     }
 
-    /**
-     * Kills the blocked app and then opens Omit.
-     */
-    private void killBlockedAppThenOpenOmit() {
-        AppBlockerService service = AppBlockerService.getInstance();
-        if (service != null) {
-            service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+    private static int overlayWindowType() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
         }
-
-        killHandler.postDelayed(this::openOmitApp, 100);
-        currentBlockedPackage = null;
-    }
-
-    private void openOmitApp() {
-        Intent intent = new Intent(this, MainActivity.class);
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-        startActivity(intent);
+        return WindowManager.LayoutParams.TYPE_PHONE;
     }
 
     private void createNotificationChannel() {
@@ -236,7 +130,10 @@ public class BlockingOverlayService extends Service {
 
     @Override
     public void onDestroy() {
+        running = false;
         super.onDestroy();
-        hideOverlay();
+        if (overlay != null) {
+            overlay.hide();
+        }
     }
 }
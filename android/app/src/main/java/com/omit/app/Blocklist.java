@@ -0,0 +1,108 @@
+package com.omit.app;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide holder for the current {@link BlocklistSnapshot}.
+ *
+ * The plugin publishes new snapshots from the Capacitor thread while
+ * {@link AppBlockerService} reads them on every accessibility event. Readers
+ * only do a single volatile read, so they always see either the complete old
+ * list or the complete new one - never a half-cleared list.
+ *
+ * The effective blocklist is the union of named layers, so native features
+ * (such as daily limits) can block packages without touching the list pushed
+ * from JS. Pattern and attribute {@link BlockRules} are published alongside
+ * the layers.
+ */
+public final class Blocklist {
+
+    /** Packages pushed from JS through setBlockedApps. */
+    public static final String LAYER_USER = "user";
+    /** Packages whose daily usage budget is exhausted. */
+    public static final String LAYER_LIMITS = "limits";
+    /** Packages of the currently active scheduled blocking windows. */
+    public static final String LAYER_SCHEDULE = "schedule";
+
+    private static final Map<String, Set<String>> layers = new HashMap<>();
+    private static BlockRules rules = null;
+    private static Runnable listener;
+    private static volatile BlocklistSnapshot current = BlocklistSnapshot.EMPTY;
+
+    private Blocklist() {
+    }
+
+    public static BlocklistSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Atomically replaces one layer and republishes the union. Returns the
+     * snapshot that was published, or the current one if the layer already
+     * held exactly these packages, in which case nothing is republished and
+     * the listener doesn't run.
+     */
+    public static synchronized BlocklistSnapshot setLayer(String layer, Collection<String> packages) {
+        Set<String> next = new HashSet<>(packages);
+        if (next.equals(layers.get(layer))) {
+            return current;
+        }
+        layers.put(layer, next);
+        return republish();
+    }
+
+    /**
+     * Sets the layer only if it hasn't been set yet in this process. Used when
+     * the service starts before the plugin has loaded.
+     */
+    public static synchronized boolean setLayerIfUnset(String layer, Collection<String> packages) {
+        if (layers.containsKey(layer)) {
+            return false;
+        }
+        setLayer(layer, packages);
+        return true;
+    }
+
+    /** Replaces the compiled rules and republishes. */
+    public static synchronized BlocklistSnapshot setRules(BlockRules newRules) {
+        rules = newRules;
+        return republish();
+    }
+
+    /** Sets the rules only if they haven't been set yet in this process. */
+    public static synchronized boolean setRulesIfUnset(BlockRules newRules) {
+        if (rules != null) {
+            return false;
+        }
+        setRules(newRules);
+        return true;
+    }
+
+    /** Registers a callback run (under the Blocklist lock) after every republish. */
+    public static synchronized void setListener(Runnable newListener) {
+        listener = newListener;
+    }
+
+    public static synchronized Set<String> getLayer(String layer) {
+        Set<String> packages = layers.get(layer);
+        return packages != null ? new HashSet<>(packages) : new HashSet<>();
+    }
+
+    private static BlocklistSnapshot republish() {
+        Set<String> union = new HashSet<>();
+        for (Set<String> packages : layers.values()) {
+            union.addAll(packages);
+        }
+        BlocklistSnapshot next = BlocklistSnapshot.of(current.getVersion() + 1, union,
+                rules != null ? rules : BlockRules.EMPTY);
+        current = next;
+        if (listener != null) {
+            listener.run();
+        }
+        return next;
+    }
+}
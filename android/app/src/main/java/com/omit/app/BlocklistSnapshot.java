@@ -0,0 +1,61 @@
+package com.omit.app;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable, versioned view of the packages that should be blocked: an exact
+ * package set plus the compiled pattern, category and installer
+ * {@link BlockRules}.
+ *
+ * A snapshot is never modified after construction, so it can be handed to the
+ * accessibility thread and read without any locking. Updates build a new
+ * snapshot and publish it through {@link Blocklist}.
+ */
+public final class BlocklistSnapshot {
+
+    public static final BlocklistSnapshot EMPTY = new BlocklistSnapshot(0, Collections.emptySet(), BlockRules.EMPTY);
+
+    private final long version;
+    private final Set<String> packages;
+    private final BlockRules rules;
+
+    private BlocklistSnapshot(long version, Set<String> packages, BlockRules rules) {
+        this.version = version;
+        this.packages = packages;
+        this.rules = rules;
+    }
+
+    static BlocklistSnapshot of(long version, Collection<String> packages, BlockRules rules) {
+        // HashSet gives O(1) lookups; String caches its hash so repeated
+        // lookups for the same foreground package don't rehash.
+        return new BlocklistSnapshot(version, Collections.unmodifiableSet(new HashSet<>(packages)), rules);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(String packageName) {
+        return packages.contains(packageName) || rules.matches(packageName);
+    }
+
+    public boolean isEmpty() {
+        return packages.isEmpty() && rules.isEmpty();
+    }
+
+    public int size() {
+        return packages.size();
+    }
+
+    /** The exact packages; packages matched only by rules aren't listed. */
+    public Set<String> getPackages() {
+        return packages;
+    }
+
+    public BlockRules getRules() {
+        return rules;
+    }
+}
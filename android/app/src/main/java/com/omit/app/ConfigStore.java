@@ -0,0 +1,460 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Blocking configuration shared by the plugin and the service, persisted as a
+ * small versioned binary file.
+ *
+ * The whole file is read into one byte array and decoded in a single pass, so
+ * a cold service start costs one read and no XML parsing. The current
+ * {@link Config} is an immutable snapshot behind a volatile field: readers
+ * never lock, and writers publish a new snapshot, notify listeners and persist
+ * it on a background thread with AtomicFile's replace-on-write. Only the
+ * newest snapshot is written if several changes queue up.
+ *
+ * The file is a header followed by tagged sections (tag, length, payload), so
+ * new kinds of rules can be added as sections without a format bump and older
+ * readers skip tags they don't know.
+ *
+ * The blocked app list carries a version, bumped on every change and
+ * persisted, and a content hash. JS uses the version as the base for add and
+ * remove deltas and the hash to tell whether a full list would change
+ * anything, so unchanged updates cost neither a bridge call nor a write.
+ *
+ * On first use, blocked_apps and is_monitoring are migrated out of
+ * OmitAppBlockerPrefs.
+ */
+public final class ConfigStore {
+
+    private static final String TAG = "ConfigStore";
+    private static final String FILE_NAME = "config.bin";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String LEGACY_KEY_BLOCKED_APPS = "blocked_apps";
+    private static final String LEGACY_KEY_IS_MONITORING = "is_monitoring";
+
+    private static final int MAGIC = 0x4F4D4346; // "OMCF"
+    private static final short FORMAT_VERSION = 1;
+    // magic(4) version(2) reserved(2)
+    private static final int HEADER_SIZE = 8;
+    // tag(2) length(4)
+    private static final int SECTION_HEADER_SIZE = 6;
+
+    private static final short SECTION_FLAGS = 1;
+    private static final short SECTION_BLOCKED_APPS = 2;
+    private static final short SECTION_RULES = 3;
+    private static final short SECTION_BLOCKED_APPS_VERSION = 4;
+
+    private static final int FLAG_MONITORING = 1;
+    // Inverted so files written before the flag existed read as tracking on
+    private static final int FLAG_USAGE_TRACKING_OFF = 2;
+
+    private static ConfigStore instance;
+
+    private final AtomicFile file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "ConfigStore"));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Config current;
+    // Newest snapshot not yet on disk; the writer takes it, so queued writes collapse
+    private Config unsaved;
+
+    /** Immutable snapshot of the configuration. */
+    public static final class Config {
+        static final Config EMPTY = new Config(false, true, new String[0], 0, Collections.emptyList());
+
+        public final boolean monitoring;
+        // Whether foreground sessions are delivered to JS
+        public final boolean usageTracking;
+        // Sorted and de-duplicated
+        private final String[] blockedApps;
+        // Bumped whenever blockedApps changes
+        public final long blockedAppsVersion;
+        private final List<BlockRules.Rule> rules;
+        // Computed on first use; 0 means not yet (racy but idempotent, like String.hashCode)
+        private int blockedAppsHash;
+
+        Config(boolean monitoring, boolean usageTracking, String[] blockedApps, long blockedAppsVersion,
+               List<BlockRules.Rule> rules) {
+            this.monitoring = monitoring;
+            this.usageTracking = usageTracking;
+            this.blockedApps = blockedApps;
+            this.blockedAppsVersion = blockedAppsVersion;
+            this.rules = rules;
+        }
+
+        public List<String> getBlockedApps() {
+            return Collections.unmodifiableList(Arrays.asList(blockedApps));
+        }
+
+        public int getBlockedAppCount() {
+            return blockedApps.length;
+        }
+
+        /** Content hash of the blocked app list, as eight hex digits. See {@link #hashBlockedApps}. */
+        public String getBlockedAppsHash() {
+            int hash = blockedAppsHash;
+            if (hash == 0) {
+                hash = hashBlockedApps(blockedApps);
+                blockedAppsHash = hash;
+            }
+            return String.format(Locale.ROOT, "%08x", hash);
+        }
+
+        public List<BlockRules.Rule> getRules() {
+            return rules;
+        }
+    }
+
+    public interface Listener {
+        /** Called on the thread that made the change, after the new snapshot is published. */
+        void onConfigChanged(Config previous, Config current);
+    }
+
+    private ConfigStore(Context context) {
+        Context appContext = context.getApplicationContext();
+        file = new AtomicFile(appContext.getFileStreamPath(FILE_NAME));
+        Config loaded = read();
+        if (loaded == null) {
+            loaded = migrateFromPrefs(appContext);
+        }
+        current = loaded;
+    }
+
+    public static synchronized ConfigStore get(Context context) {
+        if (instance == null) {
+            instance = new ConfigStore(context);
+        }
+        return instance;
+    }
+
+    public Config current() {
+        return current;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setMonitoring(boolean monitoring) {
+        Config previous;
+        Config next;
+        synchronized (this) {
+            previous = current;
+            if (previous.monitoring == monitoring) {
+                return;
+            }
+            next = new Config(monitoring, previous.usageTracking, previous.blockedApps, previous.blockedAppsVersion,
+                    previous.rules);
+            commit(next);
+        }
+        notifyListeners(previous, next);
+    }
+
+    public void setUsageTracking(boolean usageTracking) {
+        Config previous;
+        Config next;
+        synchronized (this) {
+            previous = current;
+            if (previous.usageTracking == usageTracking) {
+                return;
+            }
+            next = new Config(previous.monitoring, usageTracking, previous.blockedApps, previous.blockedAppsVersion,
+                    previous.rules);
+            commit(next);
+        }
+        notifyListeners(previous, next);
+    }
+
+    /**
+     * Replaces the blocked apps. Returns the resulting snapshot, which is the
+     * current one unchanged (same version) if the list is the same.
+     */
+    public Config setBlockedApps(Collection<String> packages) {
+        String[] sorted = packages.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return replaceBlockedApps(dedupe(sorted));
+    }
+
+    /**
+     * Adds and removes blocked apps. If expectedVersion is not negative and
+     * the list has moved past it, nothing is applied and null is returned, so
+     * a caller holding a stale copy falls back to a full replace. Otherwise
+     * returns the resulting snapshot, which is the current one unchanged if
+     * the delta was a no-op.
+     */
+    public Config updateBlockedApps(Collection<String> add, Collection<String> remove, long expectedVersion) {
+        Config previous;
+        Config next;
+        synchronized (this) {
+            previous = current;
+            if (expectedVersion >= 0 && previous.blockedAppsVersion != expectedVersion) {
+                return null;
+            }
+            Set<String> packages = new HashSet<>(Arrays.asList(previous.blockedApps));
+            boolean modified = packages.addAll(add);
+            modified |= packages.removeAll(remove);
+            if (!modified) {
+                return previous;
+            }
+            String[] sorted = packages.toArray(new String[0]);
+            Arrays.sort(sorted);
+            next = withBlockedApps(previous, sorted);
+            commit(next);
+        }
+        notifyListeners(previous, next);
+        return next;
+    }
+
+    private Config replaceBlockedApps(String[] blockedApps) {
+        Config previous;
+        Config next;
+        synchronized (this) {
+            previous = current;
+            if (Arrays.equals(previous.blockedApps, blockedApps)) {
+                return previous;
+            }
+            next = withBlockedApps(previous, blockedApps);
+            commit(next);
+        }
+        notifyListeners(previous, next);
+        return next;
+    }
+
+    private static Config withBlockedApps(Config previous, String[] blockedApps) {
+        return new Config(previous.monitoring, previous.usageTracking, blockedApps,
+                previous.blockedAppsVersion + 1, previous.rules);
+    }
+
+    public void setRules(List<BlockRules.Rule> rules) {
+        List<BlockRules.Rule> copy = Collections.unmodifiableList(new ArrayList<>(rules));
+        Config previous;
+        Config next;
+        synchronized (this) {
+            previous = current;
+            if (previous.rules.equals(copy)) {
+                return;
+            }
+            next = new Config(previous.monitoring, previous.usageTracking, previous.blockedApps,
+                    previous.blockedAppsVersion, copy);
+            commit(next);
+        }
+        notifyListeners(previous, next);
+    }
+
+    // Caller holds the lock
+    private void commit(Config next) {
+        current = next;
+        boolean queued = unsaved != null;
+        unsaved = next;
+        if (!queued) {
+            writer.execute(this::writePending);
+        }
+    }
+
+    private void notifyListeners(Config previous, Config next) {
+        for (Listener listener : listeners) {
+            listener.onConfigChanged(previous, next);
+        }
+    }
+
+    private void writePending() {
+        Config config;
+        synchronized (this) {
+            config = unsaved;
+            unsaved = null;
+        }
+        if (config != null) {
+            write(config);
+        }
+    }
+
+    private void write(Config config) {
+        byte[] bytes = encode(config);
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(bytes);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write config", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    static byte[] encode(Config config) {
+        byte[][] names = new byte[config.blockedApps.length][];
+        int packagesLength = 4;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = config.blockedApps[i].getBytes(StandardCharsets.UTF_8);
+            packagesLength += 2 + names[i].length;
+        }
+        byte[][] values = new byte[config.rules.size()][];
+        int rulesLength = 4;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = config.rules.get(i).value.getBytes(StandardCharsets.UTF_8);
+            rulesLength += 1 + 2 + values[i].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + SECTION_HEADER_SIZE + 4
+                + SECTION_HEADER_SIZE + packagesLength + SECTION_HEADER_SIZE + 8
+                + SECTION_HEADER_SIZE + rulesLength).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) 0);
+
+        out.putShort(SECTION_FLAGS).putInt(4);
+        out.putInt((config.monitoring ? FLAG_MONITORING : 0) | (config.usageTracking ? 0 : FLAG_USAGE_TRACKING_OFF));
+
+        // count(4), then per package length(2) and UTF-8 bytes
+        out.putShort(SECTION_BLOCKED_APPS).putInt(packagesLength);
+        out.putInt(names.length);
+        for (byte[] name : names) {
+            out.putShort((short) name.length).put(name);
+        }
+        out.putShort(SECTION_BLOCKED_APPS_VERSION).putInt(8);
+        out.putLong(config.blockedAppsVersion);
+
+        // count(4), then per rule type(1), length(2) and UTF-8 value
+        out.putShort(SECTION_RULES).putInt(rulesLength);
+        out.putInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.put((byte) config.rules.get(i).type).putShort((short) values[i].length).put(values[i]);
+        }
+        return out.array();
+    }
+
+    /** Reads and decodes the file, or returns null if it's missing or unreadable. */
+    private Config read() {
+        byte[] bytes;
+        try {
+            bytes = file.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read config", e);
+            return null;
+        }
+        return decode(bytes);
+    }
+
+    /** Decodes an encoded config, or returns null if it's unreadable. */
+    static Config decode(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.length < HEADER_SIZE || in.getInt() != MAGIC || in.getShort() != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring config with unknown header");
+                return null;
+            }
+            in.position(HEADER_SIZE);
+            int flags = 0;
+            String[] blockedApps = Config.EMPTY.blockedApps;
+            long blockedAppsVersion = 0;
+            List<BlockRules.Rule> rules = Config.EMPTY.rules;
+            while (in.remaining() >= SECTION_HEADER_SIZE) {
+                short tag = in.getShort();
+                int length = in.getInt();
+                int end = in.position() + length;
+                if (length < 0 || end > bytes.length) {
+                    throw new IllegalArgumentException("Truncated section " + tag);
+                }
+                if (tag == SECTION_FLAGS) {
+                    flags = in.getInt();
+                } else if (tag == SECTION_BLOCKED_APPS) {
+                    blockedApps = new String[in.getInt()];
+                    for (int i = 0; i < blockedApps.length; i++) {
+                        int nameLength = in.getShort() & 0xFFFF;
+                        blockedApps[i] = new String(bytes, in.position(), nameLength, StandardCharsets.UTF_8);
+                        in.position(in.position() + nameLength);
+                    }
+                } else if (tag == SECTION_BLOCKED_APPS_VERSION) {
+                    blockedAppsVersion = in.getLong();
+                } else if (tag == SECTION_RULES) {
+                    BlockRules.Rule[] parsed = new BlockRules.Rule[in.getInt()];
+                    for (int i = 0; i < parsed.length; i++) {
+                        int type = in.get();
+                        int valueLength = in.getShort() & 0xFFFF;
+                        parsed[i] = new BlockRules.Rule(type,
+                                new String(bytes, in.position(), valueLength, StandardCharsets.UTF_8));
+                        in.position(in.position() + valueLength);
+                    }
+                    rules = Collections.unmodifiableList(Arrays.asList(parsed));
+                }
+                in.position(end);
+            }
+            return new Config((flags & FLAG_MONITORING) != 0, (flags & FLAG_USAGE_TRACKING_OFF) == 0,
+                    blockedApps, blockedAppsVersion, rules);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Ignoring corrupt config", e);
+            return null;
+        }
+    }
+
+    private Config migrateFromPrefs(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(LEGACY_KEY_BLOCKED_APPS) && !prefs.contains(LEGACY_KEY_IS_MONITORING)) {
+            return Config.EMPTY;
+        }
+        Set<String> legacyApps = prefs.getStringSet(LEGACY_KEY_BLOCKED_APPS, Collections.emptySet());
+        String[] sorted = legacyApps.toArray(new String[0]);
+        Arrays.sort(sorted);
+        Config migrated = new Config(prefs.getBoolean(LEGACY_KEY_IS_MONITORING, false), true, dedupe(sorted), 1,
+                Collections.emptyList());
+        // Written synchronously so the prefs keys are only dropped once the file exists
+        write(migrated);
+        if (file.getBaseFile().exists()) {
+            prefs.edit().remove(LEGACY_KEY_BLOCKED_APPS).remove(LEGACY_KEY_IS_MONITORING).apply();
+        }
+        return migrated;
+    }
+
+    /**
+     * 32-bit FNV-1a over the UTF-16 code units of each sorted name, each
+     * followed by '\n'. Chosen so JS can compute the same value with
+     * charCodeAt and Math.imul and skip setBlockedApps when nothing changed.
+     * Never 0, which Config uses for "not computed".
+     */
+    static int hashBlockedApps(String[] sorted) {
+        int hash = 0x811C9DC5;
+        for (String name : sorted) {
+            for (int i = 0; i < name.length(); i++) {
+                hash = (hash ^ name.charAt(i)) * 0x01000193;
+            }
+            hash = (hash ^ '\n') * 0x01000193;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    private static String[] dedupe(String[] sorted) {
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+}
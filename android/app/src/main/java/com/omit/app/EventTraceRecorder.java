@@ -0,0 +1,189 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opt-in recorder of accessibility events and the decisions taken on them,
+ * for diagnosing sluggish or flapping blocks on real devices.
+ *
+ * Records go into a fixed-size memory-mapped ring file, so recording is a few
+ * stores into a mapped page and the trace survives process death. Once full,
+ * the oldest records are overwritten. Exported as CSV of
+ * {@code uptimeMs,eventType,packageName,decision}, which the :benchmark
+ * module replays.
+ */
+public final class EventTraceRecorder {
+
+    private static final String TAG = "EventTraceRecorder";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String KEY_ENABLED = "event_trace_enabled";
+    private static final String FILE_NAME = "event_trace.bin";
+
+    private static final int MAGIC = 0x4F4D5452; // "OMTR"
+    private static final short FORMAT_VERSION = 1;
+    // magic(4) version(2) reserved(2) capacity(4) reserved(4) written(8)
+    private static final int HEADER_SIZE = 24;
+    // uptimeMs(8) packageId(4) eventType(2) decision(1) reserved(1)
+    private static final int RECORD_SIZE = 16;
+    public static final int CAPACITY = 65536; // 1 MB
+
+    /** Pseudo event type for records about the overlay rather than an event. */
+    public static final int TYPE_OVERLAY = 0;
+
+    // Decisions; the first three match com.omit.core.EventClassifier
+    public static final int DECISION_IGNORE = 0;
+    public static final int DECISION_RESET = 1;
+    public static final int DECISION_BLOCK = 2;
+    public static final int DECISION_SHOWN = 3;
+    public static final int DECISION_COOLDOWN = 4;
+    public static final int DECISION_DISMISSED = 5;
+    public static final int DECISION_NONE = 255;
+
+    private static final String[] DECISION_NAMES = {
+            "ignore", "reset", "block", "shown", "cooldown", "dismissed"
+    };
+
+    // Checked before every record call, so disabled tracing costs one volatile read
+    private static volatile boolean enabled = false;
+
+    private static EventTraceRecorder instance;
+
+    private final Context context;
+    private final File file;
+    private final PackageInterner interner;
+    private MappedByteBuffer map;
+    private long written;
+
+    private EventTraceRecorder(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(this.context.getFilesDir(), FILE_NAME);
+        this.interner = PackageInterner.get(this.context);
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (prefs.getBoolean(KEY_ENABLED, false)) {
+            open();
+            enabled = map != null;
+        }
+    }
+
+    public static synchronized EventTraceRecorder get(Context context) {
+        if (instance == null) {
+            instance = new EventTraceRecorder(context);
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enable) {
+        if (enable && map == null) {
+            open();
+        }
+        enabled = enable && map != null;
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putBoolean(KEY_ENABLED, enable).apply();
+    }
+
+    /** Records one event or overlay outcome. Callers check isEnabled() first. */
+    public synchronized void record(long uptimeMs, int eventType, String packageName, int decision) {
+        if (map == null) {
+            return;
+        }
+        int offset = HEADER_SIZE + (int) (written % CAPACITY) * RECORD_SIZE;
+        map.putLong(offset, uptimeMs);
+        map.putInt(offset + 8, packageName != null ? interner.intern(packageName) : -1);
+        map.putShort(offset + 12, (short) eventType);
+        map.put(offset + 14, (byte) decision);
+        written++;
+        // Published after the record, so a torn write only loses that record
+        map.putLong(16, written);
+    }
+
+    public synchronized long getRecordCount() {
+        return Math.min(written, CAPACITY);
+    }
+
+    public synchronized void clear() {
+        written = 0;
+        if (map != null) {
+            map.putLong(16, 0);
+        }
+    }
+
+    /** Writes the trace, oldest first, as CSV. Returns the number of records written. */
+    public int exportCsv(File out) throws IOException {
+        byte[] snapshot;
+        long count;
+        synchronized (this) {
+            if (map == null) {
+                open();
+            }
+            if (map == null) {
+                throw new IOException("Trace file unavailable");
+            }
+            count = written;
+            snapshot = new byte[CAPACITY * RECORD_SIZE];
+            ByteBuffer view = map.duplicate();
+            view.position(HEADER_SIZE);
+            view.get(snapshot);
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN);
+        long first = Math.max(0, count - CAPACITY);
+        int exported = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out),
+                StandardCharsets.UTF_8))) {
+            writer.write("# omit event trace v" + FORMAT_VERSION + ": uptimeMs,eventType,packageName,decision\n");
+            for (long n = first; n < count; n++) {
+                int offset = (int) (n % CAPACITY) * RECORD_SIZE;
+                long uptimeMs = records.getLong(offset);
+                String packageName = interner.nameOf(records.getInt(offset + 8));
+                int eventType = records.getShort(offset + 12);
+                int decision = records.get(offset + 14) & 0xFF;
+                writer.write(uptimeMs + "," + eventType + "," + (packageName != null ? packageName : "")
+                        + "," + (decision < DECISION_NAMES.length ? DECISION_NAMES[decision] : "-") + "\n");
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    private void open() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long size = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(size);
+            }
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (fresh || map.getInt(0) != MAGIC || map.getShort(4) != FORMAT_VERSION
+                    || map.getInt(8) != CAPACITY) {
+                map.putInt(0, MAGIC);
+                map.putShort(4, FORMAT_VERSION);
+                map.putInt(8, CAPACITY);
+                map.putLong(16, 0);
+            }
+            written = map.getLong(16);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map trace file", e);
+            map = null;
+        }
+    }
+}
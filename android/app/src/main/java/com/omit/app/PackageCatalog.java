@@ -0,0 +1,215 @@
+package com.omit.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory catalog of installed user apps, built with a single package scan
+ * and then kept current from PACKAGE_ADDED/REMOVED/CHANGED/REPLACED broadcasts.
+ *
+ * Every change bumps a sequence number, so callers holding a change token can
+ * ask for just the packages that changed since. Tokens are prefixed with a
+ * per-process epoch; a token from an older process (whose catalog may have
+ * missed broadcasts) is answered with a full listing.
+ */
+public final class PackageCatalog {
+
+    private static final String TAG = "PackageCatalog";
+
+    private static PackageCatalog instance;
+
+    private final Context context;
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private final Map<String, App> apps = new HashMap<>();
+    // Sequence number of the last change per package, including removed ones
+    private final Map<String, Long> changedAt = new HashMap<>();
+    private long sequence = 0;
+
+    public static final class App {
+        public final String packageName;
+        public final String appName;
+        public final long lastUpdateTime;
+
+        App(String packageName, String appName, long lastUpdateTime) {
+            this.packageName = packageName;
+            this.appName = appName;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+    }
+
+    public static final class Delta {
+        public final String token;
+        public final boolean full;
+        public final List<App> upserted;
+        public final List<String> removed;
+
+        Delta(String token, boolean full, List<App> upserted, List<String> removed) {
+            this.token = token;
+            this.full = full;
+            this.upserted = upserted;
+            this.removed = removed;
+        }
+    }
+
+    private PackageCatalog(Context context) {
+        this.context = context.getApplicationContext();
+        registerReceiver();
+        scan();
+    }
+
+    public static synchronized PackageCatalog get(Context context) {
+        if (instance == null) {
+            instance = new PackageCatalog(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the catalog if it has already been built, without triggering (or
+     * waiting for) the initial package scan.
+     */
+    public static synchronized PackageCatalog peek() {
+        return instance;
+    }
+
+    public synchronized List<App> getApps() {
+        return new ArrayList<>(apps.values());
+    }
+
+    public synchronized App getApp(String packageName) {
+        return apps.get(packageName);
+    }
+
+    public synchronized String getToken() {
+        return epoch + ":" + sequence;
+    }
+
+    /**
+     * Returns everything that changed after the given token, or the full list if
+     * the token is null, malformed or from a previous process.
+     */
+    public synchronized Delta since(String token) {
+        long since = parseSequence(token);
+        if (since < 0 || since > sequence) {
+            return new Delta(getToken(), true, getApps(), new ArrayList<>());
+        }
+        List<App> upserted = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : changedAt.entrySet()) {
+            if (entry.getValue() <= since) {
+                continue;
+            }
+            App app = apps.get(entry.getKey());
+            if (app != null) {
+                upserted.add(app);
+            } else {
+                removed.add(entry.getKey());
+            }
+        }
+        return new Delta(getToken(), false, upserted, removed);
+    }
+
+    private long parseSequence(String token) {
+        if (token == null) {
+            return -1;
+        }
+        int separator = token.indexOf(':');
+        if (separator < 0 || !epoch.equals(token.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized void scan() {
+        PackageManager pm = context.getPackageManager();
+        for (PackageInfo pkg : pm.getInstalledPackages(PackageManager.GET_META_DATA)) {
+            App app = toApp(pm, pkg);
+            if (app != null) {
+                apps.put(app.packageName, app);
+            }
+        }
+    }
+
+    private synchronized void onPackageChanged(String packageName) {
+        PackageManager pm = context.getPackageManager();
+        App app = null;
+        try {
+            app = toApp(pm, pm.getPackageInfo(packageName, PackageManager.GET_META_DATA));
+        } catch (PackageManager.NameNotFoundException e) {
+            // Removed
+        }
+        if (app != null) {
+            apps.put(packageName, app);
+        } else if (apps.remove(packageName) == null) {
+            // Neither before nor after a user app; nothing for callers to see
+            return;
+        }
+        changedAt.put(packageName, ++sequence);
+    }
+
+    private static App toApp(PackageManager pm, PackageInfo pkg) {
+        ApplicationInfo info = pkg.applicationInfo;
+        if (info == null) {
+            return null;
+        }
+        boolean isUserApp = (info.flags & ApplicationInfo.FLAG_SYSTEM) == 0 || (info.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+        if (!isUserApp) {
+            return null;
+        }
+        return new App(pkg.packageName, pm.getApplicationLabel(info).toString(), pkg.lastUpdateTime);
+    }
+
+    private void registerReceiver() {
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data == null) {
+                    return;
+                }
+                String packageName = data.getSchemeSpecificPart();
+                // Icons can change with any update, so drop them before re-reading the package
+                AppIconCache.get(context).invalidate(packageName);
+                PackageTraits.get(context).invalidate(packageName);
+                onPackageChanged(packageName);
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        // Registered on the application context for the life of the process
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+            } else {
+                ContextCompat.registerReceiver(context, receiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering package receiver", e);
+        }
+    }
+}
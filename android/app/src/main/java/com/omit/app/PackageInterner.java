@@ -0,0 +1,257 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Assigns small, stable integer ids to package names so binary stores can
+ * refer to packages with a fixed-width field instead of a string.
+ *
+ * Ids are persisted in an append-only file of self-describing records, each
+ * carrying its id and a CRC. An id is only handed out once its record has
+ * been synced, and a torn record at the tail is dropped on load without
+ * shifting any other id, so an id never changes or moves to another package.
+ */
+public final class PackageInterner {
+
+    private static final String TAG = "PackageInterner";
+    private static final String FILE_NAME = "package_ids.bin";
+    // Line-numbered text file written by earlier versions; migrated on first load
+    private static final String LEGACY_FILE_NAME = "package_ids.txt";
+
+    // id(4) nameLength(2) name(nameLength) crc(4). An empty name only
+    // reserves its id, which is never handed out again
+    private static final int RECORD_OVERHEAD = 10;
+    // Package names are far shorter; anything longer can't be interned
+    private static final int MAX_NAME_BYTES = 1024;
+
+    private static PackageInterner instance;
+
+    private final File file;
+    private final Map<String, Integer> ids = new HashMap<>();
+    // Indexed by id; null for a reserved id
+    private final List<String> names = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+
+    private PackageInterner(File file, File legacyFile) {
+        this.file = file;
+        if (!file.exists() && legacyFile.exists()) {
+            migrate(legacyFile);
+        }
+        load();
+    }
+
+    public static synchronized PackageInterner get(Context context) {
+        if (instance == null) {
+            File dir = context.getApplicationContext().getFilesDir();
+            instance = new PackageInterner(new File(dir, FILE_NAME), new File(dir, LEGACY_FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the id for a package, assigning and persisting a new one if
+     * needed. Returns -1 if the new id could not be made durable; nothing is
+     * remembered in that case, so the next call tries again.
+     */
+    public synchronized int intern(String packageName) {
+        if (packageName.isEmpty()) {
+            return -1;
+        }
+        Integer id = ids.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        int newId = names.size();
+        try {
+            persist(newId, packageName);
+        } catch (IOException e) {
+            // A non-durable id could end up in durable records and be reassigned after a restart
+            Log.e(TAG, "Failed to persist package id for " + packageName, e);
+            return -1;
+        }
+        put(newId, packageName);
+        return newId;
+    }
+
+    /**
+     * Returns the id for a package without assigning one, or -1 if unknown.
+     */
+    public synchronized int lookup(String packageName) {
+        Integer id = ids.get(packageName);
+        return id != null ? id : -1;
+    }
+
+    public synchronized String nameOf(int id) {
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    private void persist(int id, String packageName) throws IOException {
+        ByteBuffer record = encode(id, packageName);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            long end = channel.size();
+            try {
+                channel.position(end);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Don't leave a partial record for the next append to follow
+                channel.truncate(end);
+                throw e;
+            }
+        }
+    }
+
+    private ByteBuffer encode(int id, String packageName) throws IOException {
+        byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IOException("Package name too long: " + name.length + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(id);
+        record.putShort((short) name.length);
+        record.put(name);
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void put(int id, String packageName) {
+        while (names.size() <= id) {
+            names.add(null);
+        }
+        if (!packageName.isEmpty()) {
+            names.set(id, packageName);
+            ids.put(packageName, id);
+        }
+    }
+
+    /**
+     * Reads records up to the first incomplete or corrupt one, then truncates
+     * the file there so later appends start on a record boundary.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            ByteBuffer data = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // read until full
+            }
+            data.flip();
+            int valid = 0;
+            while (data.remaining() >= RECORD_OVERHEAD) {
+                int start = data.position();
+                int id = data.getInt();
+                int length = data.getShort() & 0xFFFF;
+                if (id < 0 || length > MAX_NAME_BYTES || data.remaining() < length + 4) {
+                    break;
+                }
+                crc.reset();
+                crc.update(data.array(), start, 6 + length);
+                byte[] name = new byte[length];
+                data.get(name);
+                if ((int) crc.getValue() != data.getInt()) {
+                    break;
+                }
+                String packageName = new String(name, StandardCharsets.UTF_8);
+                if (!ids.containsKey(packageName) && nameOf(id) == null) {
+                    put(id, packageName);
+                }
+                valid = data.position();
+            }
+            if (valid < size) {
+                Log.w(TAG, "Dropping " + (size - valid) + " bytes of torn package ids");
+                channel.truncate(valid);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load package ids", e);
+        }
+    }
+
+    /**
+     * Rewrites the legacy text file as records with the same ids (line
+     * numbers). An unterminated last line may be a torn append, so its id is
+     * reserved rather than guessed at.
+     */
+    private void migrate(File legacyFile) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(legacyFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read legacy package ids", e);
+            return;
+        }
+        if (!lines.isEmpty() && !endsWithNewline(legacyFile)) {
+            lines.set(lines.size() - 1, "");
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            for (int id = 0; id < lines.size(); id++) {
+                ByteBuffer record = encode(id, lines.get(id));
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to migrate package ids", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to install migrated package ids");
+            return;
+        }
+        if (!legacyFile.delete()) {
+            Log.w(TAG, "Failed to delete legacy package ids");
+        }
+    }
+
+    private static boolean endsWithNewline(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length == 0) {
+                return true;
+            }
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
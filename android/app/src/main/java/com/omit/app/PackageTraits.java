@@ -0,0 +1,90 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-package attributes that category and installer block rules match on,
+ * resolved from PackageManager once per package and cached.
+ *
+ * Resolving is a binder call, far too slow to repeat per accessibility event,
+ * and the answer only changes when the package is updated, so the cache is
+ * invalidated from PackageCatalog's package broadcasts.
+ */
+public final class PackageTraits {
+
+    private static PackageTraits instance;
+
+    private final PackageManager packageManager;
+    private final Map<String, Traits> cache = new ConcurrentHashMap<>();
+
+    public static final class Traits {
+        static final Traits UNKNOWN = new Traits(ApplicationInfo.CATEGORY_UNDEFINED, null);
+
+        /** An ApplicationInfo.CATEGORY_* value. */
+        public final int category;
+        /** Package that installed the app, or null for preinstalled and sideloaded apps. */
+        public final String installer;
+
+        Traits(int category, String installer) {
+            this.category = category;
+            this.installer = installer;
+        }
+    }
+
+    private PackageTraits(Context context) {
+        this.packageManager = context.getApplicationContext().getPackageManager();
+    }
+
+    public static synchronized PackageTraits get(Context context) {
+        if (instance == null) {
+            instance = new PackageTraits(context);
+        }
+        return instance;
+    }
+
+    /** Returns the cached traits, resolving them on first use. May block on PackageManager. */
+    public Traits of(String packageName) {
+        Traits traits = cache.get(packageName);
+        if (traits == null) {
+            traits = resolve(packageName);
+            cache.put(packageName, traits);
+        }
+        return traits;
+    }
+
+    public void invalidate(String packageName) {
+        cache.remove(packageName);
+    }
+
+    // FLAG_IS_GAME and getInstallerPackageName are the only sources before API 26/30
+    @SuppressWarnings("deprecation")
+    private Traits resolve(String packageName) {
+        int category = ApplicationInfo.CATEGORY_UNDEFINED;
+        String installer = null;
+        try {
+            ApplicationInfo info = packageManager.getApplicationInfo(packageName, 0);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                category = info.category;
+            }
+            if (category == ApplicationInfo.CATEGORY_UNDEFINED && (info.flags & ApplicationInfo.FLAG_IS_GAME) != 0) {
+                category = ApplicationInfo.CATEGORY_GAME;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                installer = packageManager.getInstallSourceInfo(packageName).getInstallingPackageName();
+            } else {
+                installer = packageManager.getInstallerPackageName(packageName);
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            return Traits.UNKNOWN;
+        } catch (IllegalArgumentException e) {
+            // getInstallerPackageName throws for packages that vanished meanwhile
+        }
+        return new Traits(category, installer);
+    }
+}
@@ -0,0 +1,160 @@
+package com.omit.app;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded-cost check of the foreground window for a blocked in-app surface.
+ *
+ * TYPE_WINDOW_CONTENT_CHANGED arrives in the thousands while an app scrolls,
+ * so every stage is capped:
+ * <ul>
+ *   <li>content events are only subscribed while a targeted app is in the
+ *       foreground (AppBlockerService widens and narrows the subscription)</li>
+ *   <li>per window, at most one inspection per {@link #MIN_INTERVAL_MS}; events
+ *       in between collapse into the one already scheduled</li>
+ *   <li>an inspection visits at most {@link #MAX_NODES} nodes no deeper than
+ *       {@link #MAX_DEPTH}, and stops at the first match</li>
+ * </ul>
+ * Costs are counted in static metrics that getSurfaceMetrics reports.
+ */
+public final class SurfaceInspector {
+
+    static final long MIN_INTERVAL_MS = 250;
+    static final int MAX_DEPTH = 32;
+    static final int MAX_NODES = 400;
+
+    // Metrics, reset by resetSurfaceMetrics
+    public static final LatencyHistogram INSPECT = new LatencyHistogram();
+    public static final AtomicLong CONTENT_EVENTS = new AtomicLong();
+    public static final AtomicLong COALESCED_EVENTS = new AtomicLong();
+    public static final AtomicLong NODES_VISITED = new AtomicLong();
+    public static final AtomicLong BUDGET_EXHAUSTED = new AtomicLong();
+    public static final AtomicLong MATCHES = new AtomicLong();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // Written on the inspecting thread, read when scheduling
+    private volatile int lastWindowId = -1;
+    private volatile long lastInspectUptimeMs = 0;
+
+    // Traversal stack, reused across inspections (inspecting thread only)
+    private final AccessibilityNodeInfo[] stack = new AccessibilityNodeInfo[MAX_NODES];
+    private final int[] depths = new int[MAX_NODES];
+
+    /**
+     * Called for every content event from a targeted package. Returns the
+     * delay after which to run inspect(), or -1 if an inspection is already
+     * scheduled and this event is covered by it.
+     */
+    public long onContentChanged(int windowId, long uptimeMs) {
+        CONTENT_EVENTS.incrementAndGet();
+        if (!scheduled.compareAndSet(false, true)) {
+            COALESCED_EVENTS.incrementAndGet();
+            return -1;
+        }
+        if (windowId != lastWindowId) {
+            return 0;
+        }
+        return Math.max(0, lastInspectUptimeMs + MIN_INTERVAL_MS - uptimeMs);
+    }
+
+    /** Like onContentChanged for a window change, which is always inspected promptly. */
+    public boolean onWindowChanged() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Walks root for a node matching target. Returns the matching rule id or
+     * null. Takes ownership of root, and must be called once per scheduled
+     * inspection (with a null root if there is nothing to inspect).
+     */
+    public String inspect(AccessibilityNodeInfo root, SurfaceRules.Target target) {
+        scheduled.set(false);
+        if (root == null) {
+            return null;
+        }
+        // The targeted app may have left the foreground since this was scheduled
+        CharSequence rootPackage = root.getPackageName();
+        if (target == null || rootPackage == null || !target.packageName.contentEquals(rootPackage)) {
+            release(root);
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        lastWindowId = root.getWindowId();
+        lastInspectUptimeMs = SystemClock.uptimeMillis();
+
+        String match = null;
+        int visited = 0;
+        int top = 0;
+        stack[top] = root;
+        depths[top] = 0;
+        top++;
+        while (top > 0) {
+            top--;
+            AccessibilityNodeInfo node = stack[top];
+            int depth = depths[top];
+            stack[top] = null;
+            if (match == null && visited < MAX_NODES) {
+                visited++;
+                match = target.match(node.getViewIdResourceName(), node.getClassName());
+                if (match == null && depth < MAX_DEPTH) {
+                    // Children beyond the stack's capacity are skipped; they'd exceed MAX_NODES anyway
+                    int count = node.getChildCount();
+                    for (int i = count - 1; i >= 0 && top < MAX_NODES; i--) {
+                        AccessibilityNodeInfo child = node.getChild(i);
+                        if (child != null) {
+                            stack[top] = child;
+                            depths[top] = depth + 1;
+                            top++;
+                        }
+                    }
+                }
+            }
+            // Once matched or out of budget, the rest of the stack is only released
+            release(node);
+        }
+
+        NODES_VISITED.addAndGet(visited);
+        if (match != null) {
+            MATCHES.incrementAndGet();
+        } else if (visited >= MAX_NODES) {
+            BUDGET_EXHAUSTED.incrementAndGet();
+        }
+        INSPECT.recordNanos(System.nanoTime() - startNanos);
+        return match;
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("contentEvents", CONTENT_EVENTS.get());
+        counters.put("coalescedEvents", COALESCED_EVENTS.get());
+        counters.put("inspections", INSPECT.getCount());
+        counters.put("nodesVisited", NODES_VISITED.get());
+        counters.put("budgetExhausted", BUDGET_EXHAUSTED.get());
+        counters.put("matches", MATCHES.get());
+        return counters;
+    }
+
+    public static void resetMetrics() {
+        INSPECT.reset();
+        CONTENT_EVENTS.set(0);
+        COALESCED_EVENTS.set(0);
+        NODES_VISITED.set(0);
+        BUDGET_EXHAUSTED.set(0);
+        MATCHES.set(0);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void release(AccessibilityNodeInfo node) {
+        // Node pooling is gone from API 33; recycle() is a no-op there
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) {
+            node.recycle();
+        }
+    }
+}
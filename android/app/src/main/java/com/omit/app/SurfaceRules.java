@@ -0,0 +1,194 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rules that block one surface inside an otherwise allowed app, such as
+ * Reels in Instagram or Shorts in YouTube.
+ *
+ * A rule names a package and the view ids (full resource names, e.g.
+ * {@code com.instagram.android:id/clips_viewer_view_pager}) and/or view class
+ * names that only appear while the surface is on screen. Rules are compiled
+ * per package into hash sets, so checking a node is two set lookups however
+ * many rules there are. Uploaded from JS and persisted like the schedule.
+ */
+public final class SurfaceRules {
+
+    private static final String TAG = "SurfaceRules";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String KEY_RULES = "surface_block_rules";
+
+    private static SurfaceRules instance;
+
+    private final Context context;
+    private final List<Rule> rules = new ArrayList<>();
+    private volatile Map<String, Target> targets = Collections.emptyMap();
+    private Runnable changeListener;
+
+    public static final class Rule {
+        public final String id;
+        public final String packageName;
+        public final Set<String> viewIds;
+        public final Set<String> classNames;
+
+        Rule(String id, String packageName, Set<String> viewIds, Set<String> classNames) {
+            this.id = id;
+            this.packageName = packageName;
+            this.viewIds = viewIds;
+            this.classNames = classNames;
+        }
+    }
+
+    /** All rules for one package, merged. Immutable. */
+    public static final class Target {
+        public final String packageName;
+        // View id or class name -> id of the rule it came from
+        private final Map<String, String> viewIds;
+        private final Map<String, String> classNames;
+
+        Target(String packageName, Map<String, String> viewIds, Map<String, String> classNames) {
+            this.packageName = packageName;
+            this.viewIds = viewIds;
+            this.classNames = classNames;
+        }
+
+        /** Returns the id of the rule matching a node, or null. */
+        public String match(CharSequence viewId, CharSequence className) {
+            if (viewId != null && !viewIds.isEmpty()) {
+                String rule = viewIds.get(viewId.toString());
+                if (rule != null) {
+                    return rule;
+                }
+            }
+            if (className != null && !classNames.isEmpty()) {
+                return classNames.get(className.toString());
+            }
+            return null;
+        }
+
+        /** True if matching needs view ids, which are only reported on request. */
+        public boolean usesViewIds() {
+            return !viewIds.isEmpty();
+        }
+    }
+
+    private SurfaceRules(Context context) {
+        this.context = context.getApplicationContext();
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String stored = prefs.getString(KEY_RULES, null);
+        if (stored != null) {
+            try {
+                parseRules(new JSONObject(stored));
+            } catch (JSONException e) {
+                Log.e(TAG, "Ignoring corrupt surface rules", e);
+            }
+        }
+    }
+
+    public static synchronized SurfaceRules get(Context context) {
+        if (instance == null) {
+            instance = new SurfaceRules(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the rules. Expected shape:
+     * {@code { rules: [{ id, packageName, viewIds: [], classNames: [] }] }}
+     */
+    public void setRules(JSONObject json) throws JSONException {
+        Runnable listener;
+        synchronized (this) {
+            parseRules(json);
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().putString(KEY_RULES, json.toString()).apply();
+            listener = changeListener;
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    public synchronized void setChangeListener(Runnable listener) {
+        changeListener = listener;
+    }
+
+    public synchronized List<Rule> getRules() {
+        return new ArrayList<>(rules);
+    }
+
+    /** The merged rules for packageName, or null if it has none. Lock-free. */
+    public Target targetFor(String packageName) {
+        return targets.get(packageName);
+    }
+
+    public Set<String> getPackages() {
+        return targets.keySet();
+    }
+
+    private void parseRules(JSONObject json) throws JSONException {
+        List<Rule> parsed = new ArrayList<>();
+        JSONArray array = json.optJSONArray("rules");
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject rule = array.getJSONObject(i);
+                Set<String> viewIds = toSet(rule.optJSONArray("viewIds"));
+                Set<String> classNames = toSet(rule.optJSONArray("classNames"));
+                if (viewIds.isEmpty() && classNames.isEmpty()) {
+                    throw new JSONException("Rule " + i + " needs viewIds or classNames");
+                }
+                parsed.add(new Rule(rule.optString("id", String.valueOf(i)), rule.getString("packageName"),
+                        viewIds, classNames));
+            }
+        }
+
+        Map<String, Map<String, String>> viewIds = new HashMap<>();
+        Map<String, Map<String, String>> classNames = new HashMap<>();
+        for (Rule rule : parsed) {
+            for (String viewId : rule.viewIds) {
+                viewIds.computeIfAbsent(rule.packageName, k -> new HashMap<>()).put(viewId, rule.id);
+            }
+            for (String className : rule.classNames) {
+                classNames.computeIfAbsent(rule.packageName, k -> new HashMap<>()).put(className, rule.id);
+            }
+        }
+        Map<String, Target> compiled = new HashMap<>();
+        for (Rule rule : parsed) {
+            if (!compiled.containsKey(rule.packageName)) {
+                Map<String, String> ids = viewIds.get(rule.packageName);
+                Map<String, String> classes = classNames.get(rule.packageName);
+                compiled.put(rule.packageName, new Target(rule.packageName,
+                        ids != null ? ids : Collections.emptyMap(),
+                        classes != null ? classes : Collections.emptyMap()));
+            }
+        }
+
+        rules.clear();
+        rules.addAll(parsed);
+        targets = Collections.unmodifiableMap(compiled);
+    }
+
+    private static Set<String> toSet(JSONArray array) throws JSONException {
+        Set<String> set = new HashSet<>();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                set.add(array.getString(i));
+            }
+        }
+        return set;
+    }
+}
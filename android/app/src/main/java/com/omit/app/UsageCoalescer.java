@@ -0,0 +1,75 @@
+package com.omit.app;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory aggregation of usage durations per package between deliveries to JS.
+ *
+ * The service records every finished session here instead of broadcasting it,
+ * and the plugin drains the totals as a single batch per flush interval. A
+ * user switching apps every few seconds therefore costs one bridge crossing
+ * per interval instead of one per switch. UsageStats corrections are recorded
+ * here too and can make a package's total negative.
+ */
+public final class UsageCoalescer {
+
+    private static final Map<String, long[]> pending = new HashMap<>();
+    private static long pendingSince = 0;
+
+    private UsageCoalescer() {
+    }
+
+    public static synchronized void record(String packageName, long durationMs) {
+        long[] total = pending.get(packageName);
+        if (total == null) {
+            total = new long[1];
+            pending.put(packageName, total);
+        }
+        total[0] += durationMs;
+        if (pendingSince == 0) {
+            pendingSince = System.currentTimeMillis();
+        }
+    }
+
+    public static synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Removes and returns everything recorded since the last drain, or null if
+     * nothing is pending.
+     */
+    public static synchronized Batch drain() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        int size = pending.size();
+        String[] packages = new String[size];
+        long[] durations = new long[size];
+        int i = 0;
+        for (Map.Entry<String, long[]> entry : pending.entrySet()) {
+            packages[i] = entry.getKey();
+            durations[i] = entry.getValue()[0];
+            i++;
+        }
+        Batch batch = new Batch(packages, durations, pendingSince, System.currentTimeMillis());
+        pending.clear();
+        pendingSince = 0;
+        return batch;
+    }
+
+    public static final class Batch {
+        public final String[] packages;
+        public final long[] durations;
+        public final long from;
+        public final long to;
+
+        Batch(String[] packages, long[] durations, long from, long to) {
+            this.packages = packages;
+            this.durations = durations;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of app usage sessions written by {@link AppBlockerService}.
+ *
+ * Sessions are stored as fixed-size binary records in daily segment files, so
+ * an append is a single small write into the page cache and survives process
+ * death even if the WebView never hears about it. Each record carries a CRC so
+ * a torn write at the tail of a segment is detected and skipped on read.
+ *
+ * The session that is currently in the foreground is checkpointed into a tiny
+ * memory-mapped file on every event, and recovered into the log the next time
+ * the ledger is opened if the process died before the session was closed.
+ *
+ * Every appended record is also folded into {@link UsageRollups}, which answers
+ * histogram queries without touching the segments.
+ */
+public final class UsageLedger {
+
+    private static final String TAG = "UsageLedger";
+    private static final String DIR_NAME = "usage_ledger";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String OPEN_SESSION_FILE = "open_session.bin";
+    private static final String ROLLUPS_FILE = "rollups.bin";
+
+    private static final int MAGIC = 0x4F4D554C; // "OMUL"
+    private static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    // startMs(8) durationMs(4) packageId(4) source(2) flags(2) crc(4)
+    static final int RECORD_SIZE = 24;
+    private static final int OPEN_SESSION_SIZE = 24;
+
+    private static final int RETENTION_DAYS = 90;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    public static final short SOURCE_ACCESSIBILITY = 1;
+    /**
+     * Correction from UsageStatsManager: the signed difference between its
+     * usage and the accessibility sessions for one app over one interval.
+     */
+    public static final short SOURCE_USAGE_STATS = 2;
+
+    private static UsageLedger instance;
+
+    private final File dir;
+    private final PackageInterner interner;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocateDirect(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final UsageRollups rollups;
+
+    private FileChannel segment;
+    private long segmentDay = -1;
+    private MappedByteBuffer openSession;
+
+    public interface Visitor {
+        void visit(String packageName, long startMs, int durationMs, short source);
+    }
+
+    private interface RecordVisitor {
+        void visit(int packageId, long startMs, int durationMs, short source);
+    }
+
+    private UsageLedger(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.dir = new File(appContext.getFilesDir(), DIR_NAME);
+        this.interner = PackageInterner.get(appContext);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create ledger directory");
+        }
+        mapOpenSession();
+        rollups = new UsageRollups(new File(dir, ROLLUPS_FILE));
+        loadRollups();
+        recoverOpenSession();
+        pruneOldSegments();
+    }
+
+    public static synchronized UsageLedger get(Context context) {
+        if (instance == null) {
+            instance = new UsageLedger(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Appends a closed session. Safe to call from any thread.
+     */
+    public synchronized void append(String packageName, long startMs, long durationMs, short source) {
+        int packageId = interner.intern(packageName);
+        if (packageId < 0) {
+            // Without a durable id the record could be read back as another app
+            Log.e(TAG, "Dropping usage record for " + packageName + ": no package id");
+            return;
+        }
+        try {
+            FileChannel channel = segmentFor(System.currentTimeMillis());
+            int duration = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, durationMs));
+
+            recordBuffer.clear();
+            recordBuffer.putLong(startMs);
+            recordBuffer.putInt(duration);
+            recordBuffer.putInt(packageId);
+            recordBuffer.putShort(source);
+            recordBuffer.putShort((short) 0);
+            recordBuffer.putInt(checksum(recordBuffer, RECORD_SIZE - 4));
+            recordBuffer.flip();
+            while (recordBuffer.hasRemaining()) {
+                channel.write(recordBuffer);
+            }
+            rollups.add(packageId, startMs, duration, source);
+            rollups.maybeSave(segmentDay, channel.position());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append usage record", e);
+        }
+    }
+
+    /**
+     * Checkpoints the session currently in the foreground. This is a plain
+     * memory write into a mapped page, so it is cheap enough to call per event.
+     */
+    public synchronized void checkpointOpenSession(String packageName, long startMs, long lastSeenMs) {
+        if (openSession == null) {
+            return;
+        }
+        int packageId = interner.intern(packageName);
+        if (packageId < 0) {
+            // Better no recovery than crediting the previous checkpoint's app
+            openSession.putInt(20, 0);
+            return;
+        }
+        openSession.putLong(0, startMs);
+        openSession.putLong(8, lastSeenMs);
+        openSession.putInt(16, packageId);
+        openSession.putInt(20, 1);
+    }
+
+    public UsageRollups getRollups() {
+        return rollups;
+    }
+
+    /** Start of the checkpointed foreground session, or -1 if none is open. */
+    public synchronized long getOpenSessionStart() {
+        if (openSession == null || openSession.getInt(20) != 1) {
+            return -1;
+        }
+        return openSession.getLong(0);
+    }
+
+    public synchronized void clearOpenSession() {
+        if (openSession != null) {
+            openSession.putInt(20, 0);
+        }
+    }
+
+    /**
+     * Visits every valid record whose session started in [fromMs, toMs).
+     * Segments are memory-mapped read-only, so no record is copied to the heap
+     * until it is handed to the visitor.
+     */
+    public void read(long fromMs, long toMs, Visitor visitor) {
+        File[] files;
+        synchronized (this) {
+            files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        }
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+
+        // Sessions are written when they end, so a session that started before
+        // fromMs can live in the following day's segment
+        long firstDay = Math.floorDiv(fromMs, DAY_MS) - 1;
+        long lastDay = Math.floorDiv(toMs, DAY_MS) + 1;
+        for (File file : files) {
+            long day = dayOf(file);
+            if (day < firstDay || day > lastDay) {
+                continue;
+            }
+            scan(file, HEADER_SIZE, (packageId, start, durationMs, source) -> {
+                if (start < fromMs || start >= toMs) {
+                    return;
+                }
+                String packageName = interner.nameOf(packageId);
+                if (packageName != null) {
+                    visitor.visit(packageName, start, durationMs, source);
+                }
+            });
+        }
+    }
+
+    /** Visits every valid record in a segment from byteOffset on. */
+    private void scan(File file, long byteOffset, RecordVisitor visitor) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return;
+            }
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC) {
+                return;
+            }
+            CRC32 readCrc = new CRC32();
+            long first = Math.max(0, (byteOffset - HEADER_SIZE) / RECORD_SIZE);
+            long records = (size - HEADER_SIZE) / RECORD_SIZE;
+            for (long i = first; i < records; i++) {
+                int offset = (int) (HEADER_SIZE + i * RECORD_SIZE);
+                readCrc.reset();
+                for (int b = 0; b < RECORD_SIZE - 4; b++) {
+                    readCrc.update(map.get(offset + b));
+                }
+                if ((int) readCrc.getValue() != map.getInt(offset + RECORD_SIZE - 4)) {
+                    continue;
+                }
+                visitor.visit(map.getInt(offset + 12), map.getLong(offset), map.getInt(offset + 8),
+                        map.getShort(offset + 16));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read segment " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Loads the saved rollups and replays everything appended after their
+     * watermark, or rebuilds them from all segments if there is no usable save.
+     */
+    private void loadRollups() {
+        long[] watermark = rollups.load();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(dayOf(a), dayOf(b)));
+        long lastDay = -1;
+        long lastSize = HEADER_SIZE;
+        for (File file : files) {
+            long day = dayOf(file);
+            if (watermark != null && day < watermark[0]) {
+                continue;
+            }
+            long offset = watermark != null && day == watermark[0] ? watermark[1] : HEADER_SIZE;
+            scan(file, offset, rollups::add);
+            lastDay = day;
+            lastSize = file.length();
+        }
+        if (lastDay >= 0) {
+            rollups.maybeSave(lastDay, lastSize);
+        }
+    }
+
+    private FileChannel segmentFor(long nowMs) throws IOException {
+        long day = Math.floorDiv(nowMs, DAY_MS);
+        if (segment != null && day == segmentDay) {
+            return segment;
+        }
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        File file = new File(dir, SEGMENT_PREFIX + day + SEGMENT_SUFFIX);
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) RECORD_SIZE).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            size = HEADER_SIZE;
+        } else {
+            // Drop a partially written record left behind by a crash
+            long valid = HEADER_SIZE + ((size - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+            if (valid != size) {
+                channel.truncate(valid);
+                size = valid;
+            }
+        }
+        channel.position(size);
+        segment = channel;
+        segmentDay = day;
+        return channel;
+    }
+
+    private void mapOpenSession() {
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, OPEN_SESSION_FILE), "rw");
+             FileChannel channel = raf.getChannel()) {
+            openSession = channel.map(FileChannel.MapMode.READ_WRITE, 0, OPEN_SESSION_SIZE);
+            openSession.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map open session checkpoint", e);
+        }
+    }
+
+    private void recoverOpenSession() {
+        if (openSession == null || openSession.getInt(20) != 1) {
+            return;
+        }
+        long start = openSession.getLong(0);
+        long lastSeen = openSession.getLong(8);
+        String packageName = interner.nameOf(openSession.getInt(16));
+        // Credit the session up to the last event we saw; anything after that is unknown
+        if (packageName != null && lastSeen > start) {
+            append(packageName, start, lastSeen - start, SOURCE_ACCESSIBILITY);
+        }
+        clearOpenSession();
+    }
+
+    private void pruneOldSegments() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long oldestDay = Math.floorDiv(System.currentTimeMillis(), DAY_MS) - RETENTION_DAYS;
+        for (File file : files) {
+            if (dayOf(file) < oldestDay && !file.delete()) {
+                Log.w(TAG, "Failed to delete old segment " + file.getName());
+            }
+        }
+    }
+
+    private int checksum(ByteBuffer buffer, int length) {
+        crc.reset();
+        for (int i = 0; i < length; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long dayOf(File segmentFile) {
+        String name = segmentFile.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
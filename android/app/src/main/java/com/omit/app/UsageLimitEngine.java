@@ -0,0 +1,312 @@
+package com.omit.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enforces per-app and per-group daily usage budgets natively.
+ *
+ * {@link AppBlockerService} feeds finished sessions and the current
+ * foreground app into the engine. As soon as a budget runs out, the affected
+ * packages are published into {@link Blocklist#LAYER_LIMITS}, so limits keep
+ * working while the WebView is suspended. JS only pushes the policy and reads
+ * back the state.
+ */
+public final class UsageLimitEngine {
+
+    private static final String TAG = "UsageLimitEngine";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String KEY_POLICY = "usage_limit_policy";
+
+    public static final long NO_LIMIT = -1;
+
+    private static UsageLimitEngine instance;
+
+    private final Context context;
+    private final Map<String, Long> appLimits = new HashMap<>();
+    private final List<Group> groups = new ArrayList<>();
+    private final Map<String, long[]> usageToday = new HashMap<>();
+    private final Set<String> exhausted = new HashSet<>();
+    private Set<String> published = null;
+    private long dayStart;
+    private long nextDayStart;
+    private Runnable policyListener;
+
+    public static final class Group {
+        public final String id;
+        public final Set<String> packages;
+        public final long limitMs;
+
+        Group(String id, Set<String> packages, long limitMs) {
+            this.id = id;
+            this.packages = packages;
+            this.limitMs = limitMs;
+        }
+    }
+
+    private UsageLimitEngine(Context context) {
+        this.context = context.getApplicationContext();
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String policy = prefs.getString(KEY_POLICY, null);
+        if (policy != null) {
+            try {
+                parsePolicy(new JSONObject(policy));
+            } catch (JSONException e) {
+                Log.e(TAG, "Ignoring corrupt usage limit policy", e);
+            }
+        }
+        startDay(System.currentTimeMillis());
+    }
+
+    public static synchronized UsageLimitEngine get(Context context) {
+        if (instance == null) {
+            instance = new UsageLimitEngine(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the policy. Expected shape:
+     * {@code { apps: [{ packageName, limitMs }], groups: [{ id, packages: [], limitMs }] }}
+     */
+    public void setPolicy(JSONObject policy) throws JSONException {
+        Runnable listener;
+        synchronized (this) {
+            parsePolicy(policy);
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().putString(KEY_POLICY, policy.toString()).apply();
+            evaluate(null, 0);
+            listener = policyListener;
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers a callback invoked after the policy changes, so the service can
+     * re-arm its timer for the app currently in the foreground.
+     */
+    public synchronized void setPolicyListener(Runnable listener) {
+        policyListener = listener;
+    }
+
+    public synchronized void onSessionEnded(String packageName, long durationMs, long now) {
+        rollDayIfNeeded(now);
+        // Usage is tracked for every package, so a limit added mid-day still
+        // accounts for what was used earlier today
+        long[] used = usageToday.get(packageName);
+        if (used == null) {
+            used = new long[1];
+            usageToday.put(packageName, used);
+        }
+        used[0] += durationMs;
+        evaluate(null, 0);
+    }
+
+    /**
+     * Applies a signed usage correction (see UsageStatsIngestor) attributed to
+     * startMs. Corrections for earlier days don't affect today's budgets.
+     */
+    public synchronized void onCorrection(String packageName, long startMs, long deltaMs, long now) {
+        rollDayIfNeeded(now);
+        if (startMs < dayStart || startMs >= nextDayStart) {
+            return;
+        }
+        long[] used = usageToday.get(packageName);
+        if (used == null) {
+            used = new long[1];
+            usageToday.put(packageName, used);
+        }
+        used[0] = Math.max(0, used[0] + deltaMs);
+        evaluate(null, 0);
+    }
+
+    /**
+     * Re-evaluates budgets counting the foreground session that is still in
+     * progress, and publishes any newly exhausted packages.
+     */
+    public synchronized void onTick(String foregroundPackage, long foregroundSinceMs, long now) {
+        rollDayIfNeeded(now);
+        evaluate(foregroundPackage, Math.max(0, now - foregroundSinceMs));
+    }
+
+    /**
+     * Returns how long the foreground app can keep running before one of its
+     * budgets runs out, or {@link #NO_LIMIT} if it isn't limited.
+     */
+    public synchronized long msUntilExhausted(String foregroundPackage, long foregroundSinceMs, long now) {
+        rollDayIfNeeded(now);
+        if (!isLimited(foregroundPackage)) {
+            return NO_LIMIT;
+        }
+        long inProgress = Math.max(0, now - foregroundSinceMs);
+        long remaining = Long.MAX_VALUE;
+        Long appLimit = appLimits.get(foregroundPackage);
+        if (appLimit != null) {
+            remaining = appLimit - usedBy(foregroundPackage) - inProgress;
+        }
+        for (Group group : groups) {
+            if (group.packages.contains(foregroundPackage)) {
+                remaining = Math.min(remaining, group.limitMs - usedBy(group.packages) - inProgress);
+            }
+        }
+        return Math.max(0, remaining);
+    }
+
+    /**
+     * Returns the time until the next local midnight, when budgets reset.
+     */
+    public synchronized long msUntilReset(long now) {
+        return Math.max(0, nextDayStart - now);
+    }
+
+    public synchronized void rollDayIfNeeded(long now) {
+        if (now >= nextDayStart || now < dayStart) {
+            startDay(now);
+        }
+    }
+
+    public synchronized Map<String, Long> getUsageToday() {
+        Map<String, Long> usage = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : usageToday.entrySet()) {
+            usage.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return usage;
+    }
+
+    public synchronized Set<String> getExhausted() {
+        return new HashSet<>(exhausted);
+    }
+
+    public synchronized List<Group> getGroups() {
+        return new ArrayList<>(groups);
+    }
+
+    public synchronized Map<String, Long> getAppLimits() {
+        return new HashMap<>(appLimits);
+    }
+
+    public synchronized long usedBy(Set<String> packages) {
+        long total = 0;
+        for (String packageName : packages) {
+            total += usedBy(packageName);
+        }
+        return total;
+    }
+
+    private long usedBy(String packageName) {
+        long[] used = usageToday.get(packageName);
+        return used != null ? used[0] : 0;
+    }
+
+    private boolean isLimited(String packageName) {
+        if (appLimits.containsKey(packageName)) {
+            return true;
+        }
+        for (Group group : groups) {
+            if (group.packages.contains(packageName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evaluate(String foregroundPackage, long inProgressMs) {
+        Set<String> next = new HashSet<>();
+        for (Map.Entry<String, Long> entry : appLimits.entrySet()) {
+            String packageName = entry.getKey();
+            long used = usedBy(packageName) + (packageName.equals(foregroundPackage) ? inProgressMs : 0);
+            if (used >= entry.getValue()) {
+                next.add(packageName);
+            }
+        }
+        for (Group group : groups) {
+            long used = usedBy(group.packages)
+                    + (foregroundPackage != null && group.packages.contains(foregroundPackage) ? inProgressMs : 0);
+            if (used >= group.limitMs) {
+                next.addAll(group.packages);
+            }
+        }
+        // Exhaustion is sticky until the day rolls or the policy changes, so a
+        // too-short session that never reaches the ledger can't unblock an app
+        next.addAll(exhausted);
+        exhausted.clear();
+        exhausted.addAll(next);
+        if (!next.equals(published)) {
+            published = next;
+            Blocklist.setLayer(Blocklist.LAYER_LIMITS, next);
+        }
+    }
+
+    private void parsePolicy(JSONObject policy) throws JSONException {
+        Map<String, Long> newAppLimits = new HashMap<>();
+        List<Group> newGroups = new ArrayList<>();
+
+        JSONArray apps = policy.optJSONArray("apps");
+        if (apps != null) {
+            for (int i = 0; i < apps.length(); i++) {
+                JSONObject app = apps.getJSONObject(i);
+                newAppLimits.put(app.getString("packageName"), app.getLong("limitMs"));
+            }
+        }
+        JSONArray groupArray = policy.optJSONArray("groups");
+        if (groupArray != null) {
+            for (int i = 0; i < groupArray.length(); i++) {
+                JSONObject group = groupArray.getJSONObject(i);
+                JSONArray packages = group.getJSONArray("packages");
+                Set<String> members = new HashSet<>();
+                for (int j = 0; j < packages.length(); j++) {
+                    members.add(packages.getString(j));
+                }
+                newGroups.add(new Group(group.getString("id"), members, group.getLong("limitMs")));
+            }
+        }
+
+        appLimits.clear();
+        appLimits.putAll(newAppLimits);
+        groups.clear();
+        groups.addAll(newGroups);
+        // A changed policy can un-block packages (limit raised or removed); the
+        // following evaluate() republishes only if the result actually differs
+        exhausted.clear();
+    }
+
+    private void startDay(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        nextDayStart = calendar.getTimeInMillis();
+
+        usageToday.clear();
+        exhausted.clear();
+        // Rebuild today's totals from the durable ledger so a restart doesn't reset budgets
+        UsageLedger.get(context).read(dayStart, now, (packageName, startMs, durationMs, source) -> {
+            long[] used = usageToday.get(packageName);
+            if (used == null) {
+                used = new long[1];
+                usageToday.put(packageName, used);
+            }
+            used[0] += durationMs;
+        });
+        evaluate(null, 0);
+    }
+}
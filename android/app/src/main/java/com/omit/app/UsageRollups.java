@@ -0,0 +1,360 @@
+package com.omit.app;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hourly and daily usage totals per package, kept current by {@link UsageLedger}.
+ *
+ * A bucket is an int[] of milliseconds indexed by interned package id, and the
+ * buckets sit in two fixed rings (UTC hours and local days), so a histogram
+ * query walks a few hundred small arrays instead of scanning the ledger. The
+ * ledger feeds every record it appends through add(). Sessions are split at
+ * hour boundaries; UsageStats corrections are credited to the hour they start
+ * in, which is exact because the ingestor writes them per hour.
+ *
+ * Rollups are derived data. They are saved together with a watermark into the
+ * ledger (segment day and byte offset), records appended after the watermark
+ * are replayed on load, and a missing or unreadable file is rebuilt from the
+ * ledger.
+ */
+public final class UsageRollups {
+
+    private static final String TAG = "UsageRollups";
+
+    public static final int GRANULARITY_HOUR = 0;
+    public static final int GRANULARITY_DAY = 1;
+
+    private static final int MAGIC = 0x4F4D5552; // "OMUR"
+    private static final short FORMAT_VERSION = 1;
+
+    static final int HOURS = 14 * 24;
+    // Same as the ledger's retention; older days can't be rebuilt anyway
+    static final int DAYS = 90;
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    // Anything lost between saves is replayed from the ledger, so save rarely
+    private static final long SAVE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final AtomicFile file;
+    private final Ring hourly = new Ring(HOURS);
+    private final Ring daily = new Ring(DAYS);
+    private boolean dirty = false;
+    private long lastSaveMs = 0;
+
+    /** Per-package totals over consecutive buckets. */
+    public static final class Histogram {
+        public final int granularity;
+        public final long[] bucketStarts;
+        public final String[] packages;
+        // durations[package][bucket] in ms
+        public final long[][] durations;
+
+        Histogram(int granularity, long[] bucketStarts, String[] packages, long[][] durations) {
+            this.granularity = granularity;
+            this.bucketStarts = bucketStarts;
+            this.packages = packages;
+            this.durations = durations;
+        }
+    }
+
+    UsageRollups(File file) {
+        this.file = new AtomicFile(file);
+    }
+
+    /**
+     * Credits one ledger record. durationMs is signed for corrections.
+     */
+    synchronized void add(int packageId, long startMs, long durationMs, short source) {
+        if (source == UsageLedger.SOURCE_USAGE_STATS || durationMs <= 0) {
+            credit(packageId, startMs, durationMs);
+        } else {
+            long end = startMs + durationMs;
+            for (long t = startMs; t < end; ) {
+                long chunkEnd = Math.min(end, (Math.floorDiv(t, HOUR_MS) + 1) * HOUR_MS);
+                credit(packageId, t, chunkEnd - t);
+                t = chunkEnd;
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Returns totals per package for the buckets overlapping [fromMs, toMs),
+     * clamped to what the ring for granularity still holds. With packages
+     * null, every package with usage in the range is included.
+     */
+    public synchronized Histogram query(long fromMs, long toMs, int granularity, String[] packages,
+                                        PackageInterner interner) {
+        Ring ring = granularity == GRANULARITY_DAY ? daily : hourly;
+        long lastKey = keyOf(granularity, Math.max(fromMs, toMs - 1));
+        long firstKey = Math.max(keyOf(granularity, fromMs), lastKey - ring.keys.length + 1);
+        int buckets = (int) (lastKey - firstKey + 1);
+
+        int[] ids;
+        if (packages != null) {
+            ids = new int[packages.length];
+            for (int i = 0; i < packages.length; i++) {
+                ids[i] = interner.lookup(packages[i]);
+            }
+        } else {
+            ids = usedIds(ring, firstKey, lastKey);
+            packages = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                packages[i] = interner.nameOf(ids[i]);
+            }
+        }
+
+        long[] bucketStarts = new long[buckets];
+        long[][] durations = new long[ids.length][buckets];
+        for (int b = 0; b < buckets; b++) {
+            long key = firstKey + b;
+            bucketStarts[b] = startOf(granularity, key);
+            int[] bucket = ring.peek(key);
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                // Corrections can leave a bucket briefly negative until the session they offset is replayed
+                if (id >= 0 && id < bucket.length && bucket[id] > 0) {
+                    durations[i][b] = bucket[id];
+                }
+            }
+        }
+        return new Histogram(granularity, bucketStarts, packages, durations);
+    }
+
+    /**
+     * Loads the saved rollups. Returns the ledger watermark {day, offset} they
+     * cover, or null if there is nothing usable and the caller must rebuild.
+     */
+    synchronized long[] load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION) {
+                return null;
+            }
+            long[] watermark = { in.readLong(), in.readLong() };
+            if (!hourly.read(in) || !daily.read(in)) {
+                clear();
+                return null;
+            }
+            return watermark;
+        } catch (IOException e) {
+            // Missing on first run, otherwise corrupt; either way rebuild
+            clear();
+            return null;
+        }
+    }
+
+    /** Saves if something changed and the last save is old enough. */
+    synchronized void maybeSave(long watermarkDay, long watermarkOffset) {
+        long now = System.currentTimeMillis();
+        if (dirty && now - lastSaveMs >= SAVE_INTERVAL_MS) {
+            save(watermarkDay, watermarkOffset, now);
+        }
+    }
+
+    synchronized void clear() {
+        hourly.clear();
+        daily.clear();
+        dirty = true;
+    }
+
+    private void save(long watermarkDay, long watermarkOffset, long now) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeShort(FORMAT_VERSION);
+            data.writeLong(watermarkDay);
+            data.writeLong(watermarkOffset);
+            hourly.write(data);
+            daily.write(data);
+            data.flush();
+            file.finishWrite(out);
+            dirty = false;
+            lastSaveMs = now;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save usage rollups", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    private void credit(int packageId, long timeMs, long ms) {
+        int[] hour = hourly.bucket(keyOf(GRANULARITY_HOUR, timeMs), packageId + 1);
+        if (hour != null) {
+            hour[packageId] += (int) ms;
+        }
+        int[] day = daily.bucket(keyOf(GRANULARITY_DAY, timeMs), packageId + 1);
+        if (day != null) {
+            day[packageId] += (int) ms;
+        }
+    }
+
+    private static int[] usedIds(Ring ring, long firstKey, long lastKey) {
+        int length = 0;
+        for (long key = firstKey; key <= lastKey; key++) {
+            int[] bucket = ring.peek(key);
+            if (bucket != null) {
+                length = Math.max(length, bucket.length);
+            }
+        }
+        boolean[] used = new boolean[length];
+        int count = 0;
+        for (long key = firstKey; key <= lastKey; key++) {
+            int[] bucket = ring.peek(key);
+            if (bucket == null) {
+                continue;
+            }
+            for (int id = 0; id < bucket.length; id++) {
+                if (bucket[id] > 0 && !used[id]) {
+                    used[id] = true;
+                    count++;
+                }
+            }
+        }
+        int[] ids = new int[count];
+        for (int id = 0, i = 0; id < length; id++) {
+            if (used[id]) {
+                ids[i++] = id;
+            }
+        }
+        return ids;
+    }
+
+    // Hours are UTC hours, which line up with local hours in whole-hour time zones
+    private static long keyOf(int granularity, long timeMs) {
+        if (granularity == GRANULARITY_DAY) {
+            return Math.floorDiv(timeMs + TimeZone.getDefault().getOffset(timeMs), DAY_MS);
+        }
+        return Math.floorDiv(timeMs, HOUR_MS);
+    }
+
+    private static long startOf(int granularity, long key) {
+        if (granularity == GRANULARITY_DAY) {
+            TimeZone zone = TimeZone.getDefault();
+            long utcMidnight = key * DAY_MS;
+            return utcMidnight - zone.getOffset(utcMidnight - zone.getOffset(utcMidnight));
+        }
+        return key * HOUR_MS;
+    }
+
+    /** Fixed ring of buckets keyed by hour or day number; a slot is reused once its key falls out. */
+    private static final class Ring {
+        final long[] keys;
+        final int[][] buckets;
+
+        Ring(int size) {
+            keys = new long[size];
+            buckets = new int[size][];
+            Arrays.fill(keys, Long.MIN_VALUE);
+        }
+
+        /** Returns the bucket for key, sized for minLength ids, or null if key is older than the ring. */
+        int[] bucket(long key, int minLength) {
+            int slot = (int) Math.floorMod(key, (long) keys.length);
+            int[] bucket = buckets[slot];
+            if (keys[slot] != key) {
+                if (keys[slot] > key) {
+                    return null;
+                }
+                keys[slot] = key;
+                if (bucket != null) {
+                    Arrays.fill(bucket, 0);
+                }
+            }
+            if (bucket == null || bucket.length < minLength) {
+                int[] grown = new int[Math.max(minLength, bucket == null ? 16 : bucket.length + bucket.length / 2)];
+                if (bucket != null) {
+                    System.arraycopy(bucket, 0, grown, 0, bucket.length);
+                }
+                bucket = grown;
+                buckets[slot] = bucket;
+            }
+            return bucket;
+        }
+
+        int[] peek(long key) {
+            int slot = (int) Math.floorMod(key, (long) keys.length);
+            return keys[slot] == key ? buckets[slot] : null;
+        }
+
+        void clear() {
+            Arrays.fill(keys, Long.MIN_VALUE);
+            Arrays.fill(buckets, null);
+        }
+
+        // Sparse: slot count, then per used slot its key and the non-zero (id, ms) pairs
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(keys.length);
+            for (int slot = 0; slot < keys.length; slot++) {
+                int[] bucket = buckets[slot];
+                if (keys[slot] == Long.MIN_VALUE || bucket == null) {
+                    out.writeLong(Long.MIN_VALUE);
+                    continue;
+                }
+                out.writeLong(keys[slot]);
+                int used = 0;
+                for (int value : bucket) {
+                    if (value != 0) {
+                        used++;
+                    }
+                }
+                out.writeInt(used);
+                for (int id = 0; id < bucket.length; id++) {
+                    if (bucket[id] != 0) {
+                        out.writeInt(id);
+                        out.writeInt(bucket[id]);
+                    }
+                }
+            }
+        }
+
+        boolean read(DataInputStream in) throws IOException {
+            if (in.readInt() != keys.length) {
+                return false;
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                long key = in.readLong();
+                if (key == Long.MIN_VALUE) {
+                    continue;
+                }
+                int used = in.readInt();
+                int[] ids = new int[used];
+                int[] values = new int[used];
+                int length = 0;
+                for (int i = 0; i < used; i++) {
+                    ids[i] = in.readInt();
+                    values[i] = in.readInt();
+                    if (ids[i] < 0) {
+                        return false;
+                    }
+                    length = Math.max(length, ids[i] + 1);
+                }
+                int[] bucket = new int[length];
+                for (int i = 0; i < used; i++) {
+                    bucket[ids[i]] = values[i];
+                }
+                keys[slot] = key;
+                buckets[slot] = bucket;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.omit.app;
+
+import android.app.AppOpsManager;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls foreground usage from UsageStatsManager and reconciles the ledger
+ * against it.
+ *
+ * Accessibility-derived sessions miss screen-off time (the last app keeps
+ * "running" until the next window change) and anything that happened while
+ * the service was disconnected. Each pass reads UsageEvents from a persisted
+ * cursor, folds them into per-app foreground sessions, and compares them with
+ * the accessibility records for the same interval. The difference per app and
+ * hour is appended to the ledger as one SOURCE_USAGE_STATS correction record.
+ * Summing an hour's records therefore gives UsageStats-accurate totals (which
+ * is what {@link UsageRollups} relies on), and the accessibility sessions stay
+ * in place as the fine-grained timeline.
+ *
+ * The cursor only advances past closed sessions. A session still in the
+ * foreground (by either source) stays unreconciled until a later pass. The
+ * cursor can still fall inside a UsageStats session, since the accessibility
+ * and UsageStats timestamps for the same switch differ by a few ms, so the
+ * package in the foreground at the cursor is persisted with it and seeds the
+ * next pass. Otherwise that pass would never see the session's RESUMED.
+ */
+public final class UsageStatsIngestor {
+
+    private static final String TAG = "UsageStatsIngestor";
+    private static final String PREFS_NAME = "OmitAppBlockerPrefs";
+    private static final String KEY_CURSOR = "usage_stats_cursor";
+    // The UsageStats foreground session open at the cursor, if any
+    private static final String KEY_OPEN_PACKAGE = "usage_stats_open_package";
+    private static final String KEY_OPEN_SINCE = "usage_stats_open_since";
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    // Corrections are written to today's ledger segment, and the ledger only
+    // looks one segment past a session's start, so never reconcile further back
+    private static final long MAX_LOOKBACK_MS = DAY_MS - TimeUnit.MINUTES.toMillis(5);
+    // Differences below this are timestamp jitter between the two sources
+    private static final long MIN_CORRECTION_MS = 1000;
+
+    private static UsageStatsIngestor instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final UsageStatsManager usageStats;
+    private final UsageLedger ledger;
+
+    /** What one pass reconciled. */
+    public static final class Result {
+        public final long fromMs;
+        public final long toMs;
+        public final int corrections;
+
+        Result(long fromMs, long toMs, int corrections) {
+            this.fromMs = fromMs;
+            this.toMs = toMs;
+            this.corrections = corrections;
+        }
+    }
+
+    private UsageStatsIngestor(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.usageStats = this.context.getSystemService(UsageStatsManager.class);
+        this.ledger = UsageLedger.get(this.context);
+    }
+
+    public static synchronized UsageStatsIngestor get(Context context) {
+        if (instance == null) {
+            instance = new UsageStatsIngestor(context);
+        }
+        return instance;
+    }
+
+    public static boolean hasPermission(Context context) {
+        AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        int mode = appOps.checkOpNoThrow(
+                AppOpsManager.OPSTR_GET_USAGE_STATS,
+                android.os.Process.myUid(),
+                context.getPackageName()
+        );
+        return mode == AppOpsManager.MODE_ALLOWED;
+    }
+
+    /**
+     * Runs one ingestion and reconciliation pass. Returns null if usage access
+     * isn't granted or there was nothing new to reconcile. Does disk I/O and
+     * binder calls; never call on the main thread.
+     */
+    public synchronized Result ingest() {
+        if (usageStats == null || !hasPermission(context)) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long cursor = prefs.getLong(KEY_CURSOR, 0);
+        long from = Math.max(cursor, now - MAX_LOOKBACK_MS);
+
+        // Fold events into closed foreground sessions, starting from whatever
+        // was open at the cursor (only known if from is the cursor itself)
+        Map<String, long[]> reported = new HashMap<>();
+        String foreground = from == cursor ? prefs.getString(KEY_OPEN_PACKAGE, null) : null;
+        long foregroundSince = foreground != null ? prefs.getLong(KEY_OPEN_SINCE, from) : 0;
+        boolean seenForeground = foreground != null;
+        UsageEvents events;
+        try {
+            events = usageStats.queryEvents(from, now);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Usage access revoked", e);
+            return null;
+        }
+        if (events == null) {
+            return null;
+        }
+        UsageEvents.Event event = new UsageEvents.Event();
+        while (events.getNextEvent(event)) {
+            long time = event.getTimeStamp();
+            String packageName = event.getPackageName();
+            int type = event.getEventType();
+            if (type == UsageEvents.Event.ACTIVITY_RESUMED) {
+                seenForeground = true;
+                if (!packageName.equals(foreground)) {
+                    if (foreground != null) {
+                        add(reported, foreground, foregroundSince, time, from);
+                    }
+                    foreground = packageName;
+                    foregroundSince = time;
+                }
+            } else if (isForegroundEnd(type, packageName, foreground)) {
+                add(reported, foreground, foregroundSince, time, from);
+                foreground = null;
+            } else if (!seenForeground && isActivityEnd(type)) {
+                // First pass, or lookback clamped: the app was already in the
+                // foreground at from, so its RESUMED falls before the query
+                seenForeground = true;
+                add(reported, packageName, from, time, from);
+            }
+        }
+
+        // Don't reconcile into sessions that either source still has open
+        long to = now;
+        if (foreground != null) {
+            to = Math.min(to, foregroundSince);
+        }
+        long openAccessibility = ledger.getOpenSessionStart();
+        if (openAccessibility > 0) {
+            to = Math.min(to, openAccessibility);
+        }
+        if (to <= from) {
+            return null;
+        }
+
+        Map<String, long[]> recorded = new HashMap<>();
+        // Sessions are recorded when they end, so look back for ones overlapping from
+        ledger.read(from - DAY_MS, to, (packageName, startMs, durationMs, source) -> {
+            if (source == UsageLedger.SOURCE_ACCESSIBILITY) {
+                add(recorded, packageName, startMs, startMs + durationMs, from);
+            }
+        });
+
+        int corrections = writeCorrections(reported, recorded, from, to);
+
+        // The session open at to, which the next pass resumes from
+        String openPackage = null;
+        long openSince = 0;
+        if (foreground != null && foregroundSince <= to) {
+            openPackage = foreground;
+            openSince = foregroundSince;
+        } else {
+            for (Map.Entry<String, long[]> e : reported.entrySet()) {
+                long start = startOfSessionSpanning(e.getValue(), to);
+                if (start >= 0) {
+                    openPackage = e.getKey();
+                    openSince = start;
+                    break;
+                }
+            }
+        }
+        SharedPreferences.Editor editor = prefs.edit().putLong(KEY_CURSOR, to);
+        if (openPackage != null) {
+            editor.putString(KEY_OPEN_PACKAGE, openPackage).putLong(KEY_OPEN_SINCE, openSince);
+        } else {
+            editor.remove(KEY_OPEN_PACKAGE).remove(KEY_OPEN_SINCE);
+        }
+        editor.apply();
+        return new Result(from, to, corrections);
+    }
+
+    private int writeCorrections(Map<String, long[]> reported, Map<String, long[]> recorded, long from, long to) {
+        UsageLimitEngine limits = UsageLimitEngine.get(context);
+        // Same switch as the service's sessions: tracking off means nothing reaches JS
+        boolean deliverToJs = ConfigStore.get(context).current().usageTracking;
+        long now = System.currentTimeMillis();
+        int written = 0;
+        // Per hour in [from, to), so each correction lands in the right rollup bucket
+        for (long hourStart = Math.floorDiv(from, HOUR_MS) * HOUR_MS; hourStart < to; hourStart += HOUR_MS) {
+            long segmentStart = Math.max(from, hourStart);
+            long segmentEnd = Math.min(to, hourStart + HOUR_MS);
+            Map<String, Long> deltas = new HashMap<>();
+            for (Map.Entry<String, long[]> e : reported.entrySet()) {
+                deltas.put(e.getKey(), overlap(e.getValue(), segmentStart, segmentEnd));
+            }
+            for (Map.Entry<String, long[]> e : recorded.entrySet()) {
+                long base = deltas.containsKey(e.getKey()) ? deltas.get(e.getKey()) : 0;
+                deltas.put(e.getKey(), base - overlap(e.getValue(), segmentStart, segmentEnd));
+            }
+            for (Map.Entry<String, Long> e : deltas.entrySet()) {
+                long delta = e.getValue();
+                if (Math.abs(delta) < MIN_CORRECTION_MS) {
+                    continue;
+                }
+                ledger.append(e.getKey(), segmentStart, delta, UsageLedger.SOURCE_USAGE_STATS);
+                if (deliverToJs) {
+                    UsageCoalescer.record(e.getKey(), delta);
+                }
+                limits.onCorrection(e.getKey(), segmentStart, delta, now);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static boolean isForegroundEnd(int type, String packageName, String foreground) {
+        if (foreground == null) {
+            return false;
+        }
+        if (isActivityEnd(type)) {
+            return packageName.equals(foreground);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && type == UsageEvents.Event.DEVICE_SHUTDOWN) {
+            return true;
+        }
+        // Screen off or lock ends whatever was in the foreground
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && (type == UsageEvents.Event.SCREEN_NON_INTERACTIVE || type == UsageEvents.Event.KEYGUARD_SHOWN);
+    }
+
+    private static boolean isActivityEnd(int type) {
+        return type == UsageEvents.Event.ACTIVITY_PAUSED
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && type == UsageEvents.Event.ACTIVITY_STOPPED);
+    }
+
+    /** Start of the interval in list that strictly contains time, or -1. */
+    private static long startOfSessionSpanning(long[] list, long time) {
+        int n = (int) list[0];
+        for (int i = 0; i < n; i++) {
+            if (list[1 + 2 * i] < time && time < list[2 + 2 * i]) {
+                return list[1 + 2 * i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Accumulates the interval [start, end) clipped to from, as a flat list of
+     * start/end pairs per package.
+     */
+    private static void add(Map<String, long[]> sessions, String packageName, long start, long end, long from) {
+        start = Math.max(start, from);
+        if (end <= start) {
+            return;
+        }
+        long[] list = sessions.get(packageName);
+        if (list == null) {
+            list = new long[] { 0 };
+        }
+        int n = (int) list[0];
+        if (1 + 2 * (n + 1) > list.length) {
+            long[] grown = new long[Math.max(3, list.length * 2 + 1)];
+            System.arraycopy(list, 0, grown, 0, list.length);
+            list = grown;
+        }
+        list[1 + 2 * n] = start;
+        list[2 + 2 * n] = end;
+        list[0] = n + 1;
+        sessions.put(packageName, list);
+    }
+
+    private static long overlap(long[] list, long from, long to) {
+        long total = 0;
+        int n = (int) list[0];
+        for (int i = 0; i < n; i++) {
+            long start = Math.max(list[1 + 2 * i], from);
+            long end = Math.min(list[2 + 2 * i], to);
+            if (end > start) {
+                total += end - start;
+            }
+        }
+        return total;
+    }
+}
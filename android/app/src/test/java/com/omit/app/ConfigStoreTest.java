@@ -0,0 +1,97 @@
+package com.omit.app;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigStoreTest {
+
+    // Pinned: hashBlockedApps in src/lib/blocklist-hash.ts must produce the same
+    // values (see blocklist-hash.test.ts), or JS stops skipping no-op updates
+    private static final String[] SORTED_APPS = {
+            "com.google.android.youtube", "com.instagram.android", "com.zhiliaoapp.musically"
+    };
+    private static final String SORTED_APPS_HASH = "c2858c48";
+    private static final String EMPTY_HASH = "811c9dc5";
+    private static final String NON_ASCII_HASH = "a051af5a";
+
+    private static ConfigStore.Config config(String[] blockedApps, long version, List<BlockRules.Rule> rules) {
+        return new ConfigStore.Config(true, false, blockedApps, version, rules);
+    }
+
+    @Test
+    public void hashMatchesPinnedValues() {
+        assertEquals(SORTED_APPS_HASH, config(SORTED_APPS, 1, Collections.emptyList()).getBlockedAppsHash());
+        assertEquals(EMPTY_HASH, config(new String[0], 0, Collections.emptyList()).getBlockedAppsHash());
+        // UTF-16 code units, as JS charCodeAt sees them
+        assertEquals(NON_ASCII_HASH,
+                config(new String[] { "com.example.ü" }, 1, Collections.emptyList()).getBlockedAppsHash());
+    }
+
+    @Test
+    public void hashIsNeverZero() {
+        assertTrue(ConfigStore.hashBlockedApps(SORTED_APPS) != 0);
+        assertTrue(ConfigStore.hashBlockedApps(new String[0]) != 0);
+    }
+
+    @Test
+    public void hashDependsOnNameBoundaries() {
+        assertFalse(ConfigStore.hashBlockedApps(new String[] { "com.a", "pp" })
+                == ConfigStore.hashBlockedApps(new String[] { "com.app" }));
+    }
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        List<BlockRules.Rule> rules = Arrays.asList(
+                new BlockRules.Rule(BlockRules.TYPE_PREFIX, "com.facebook"),
+                new BlockRules.Rule(BlockRules.TYPE_GLOB, "com.*.games"),
+                new BlockRules.Rule(BlockRules.TYPE_CATEGORY, "social"),
+                new BlockRules.Rule(BlockRules.TYPE_INSTALLER, "com.android.vending"));
+        ConfigStore.Config original = config(SORTED_APPS, 42, rules);
+
+        ConfigStore.Config decoded = ConfigStore.decode(ConfigStore.encode(original));
+
+        assertNotNull(decoded);
+        assertTrue(decoded.monitoring);
+        assertFalse(decoded.usageTracking);
+        assertEquals(42, decoded.blockedAppsVersion);
+        assertEquals(Arrays.asList(SORTED_APPS), decoded.getBlockedApps());
+        assertEquals(rules, decoded.getRules());
+        assertEquals(SORTED_APPS_HASH, decoded.getBlockedAppsHash());
+    }
+
+    @Test
+    public void emptyConfigRoundTrips() {
+        ConfigStore.Config decoded = ConfigStore.decode(ConfigStore.encode(ConfigStore.Config.EMPTY));
+
+        assertNotNull(decoded);
+        assertFalse(decoded.monitoring);
+        assertTrue(decoded.usageTracking);
+        assertEquals(0, decoded.getBlockedAppCount());
+        assertEquals(0, decoded.blockedAppsVersion);
+        assertTrue(decoded.getRules().isEmpty());
+    }
+
+    @Test
+    public void unknownSectionsAreSkipped() {
+        byte[] encoded = ConfigStore.encode(config(SORTED_APPS, 7, Collections.emptyList()));
+        // tag 99, length 4 (little-endian), payload
+        byte[] unknown = { 99, 0, 4, 0, 0, 0, 1, 2, 3, 4 };
+        byte[] extended = Arrays.copyOf(encoded, encoded.length + unknown.length);
+        System.arraycopy(unknown, 0, extended, encoded.length, unknown.length);
+
+        ConfigStore.Config decoded = ConfigStore.decode(extended);
+
+        assertNotNull(decoded);
+        assertEquals(7, decoded.blockedAppsVersion);
+        assertArrayEquals(SORTED_APPS, decoded.getBlockedApps().toArray(new String[0]));
+    }
+}
@@ -0,0 +1,149 @@
+package com.omit.benchmark;
+
+import com.omit.core.AdaptiveDebouncer;
+import com.omit.core.EventClassifier;
+import com.omit.core.OverlayStateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays window events through the same decision path AppBlockerService
+ * runs: debounce learning and classification on the event thread, then the
+ * overlay state machine. Each invocation is one event, so the score is
+ * per-event latency and gc.alloc.rate.norm is bytes allocated per event.
+ *
+ * Debounce timers are simulated against the trace's own clock: a scheduled
+ * show fires once an event at or after its due time is replayed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockDecisionBenchmark {
+
+    private static final String[] APPS = {
+            "com.instagram.android", "com.zhiliaoapp.musically", "com.twitter.android",
+            "com.reddit.frontpage", "com.google.android.youtube", "com.whatsapp",
+            "com.google.android.gm", "com.spotify.music", "com.android.chrome",
+            "com.google.android.apps.maps", "org.telegram.messenger", "com.slack",
+    };
+
+    /** "synthetic", or the path of a recorded trace to replay. */
+    @Param({"synthetic"})
+    public String trace;
+
+    /** Number of APPS (from the start) that are blocked. */
+    @Param({"4"})
+    public int blockedApps;
+
+    private EventTrace events;
+    private int cursor;
+    private long clockOffset;
+    private long now;
+
+    private AdaptiveDebouncer debouncer;
+    private EventClassifier classifier;
+    private OverlayStateMachine overlayState;
+
+    private String scheduledPackage;
+    private long scheduledAt;
+    private boolean dismissPending;
+
+    // Sinks so the JIT can't drop the work
+    private long sessionsEnded;
+    private long overlaysShown;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        events = "synthetic".equals(trace)
+                ? EventTrace.synthetic(42, 100_000, APPS)
+                : EventTrace.load(trace);
+
+        Set<String> blocked = new HashSet<>(Arrays.asList(APPS).subList(0, Math.min(blockedApps, APPS.length)));
+        Set<String> launchers = new HashSet<>(Arrays.asList(EventTrace.LAUNCHER));
+
+        debouncer = new AdaptiveDebouncer();
+        classifier = new EventClassifier(EventTrace.OWN_PACKAGE, launchers, blocked::contains,
+                new EventClassifier.UsageListener() {
+                    @Override
+                    public void onSessionEnded(String packageName, long startMs, long endMs) {
+                        sessionsEnded += endMs - startMs;
+                    }
+
+                    @Override
+                    public void onForegroundChanged(String packageName, long sinceMs) {
+                    }
+                });
+        overlayState = new OverlayStateMachine(debouncer, () -> now, new OverlayStateMachine.Output() {
+            @Override
+            public void scheduleShow(String packageName, long delayMs) {
+                scheduledPackage = packageName;
+                scheduledAt = now + delayMs;
+            }
+
+            @Override
+            public void cancelShow() {
+                scheduledPackage = null;
+            }
+
+            @Override
+            public void show(String packageName) {
+                overlaysShown++;
+                // The user backs out on the next event
+                dismissPending = true;
+            }
+        });
+        cursor = 0;
+        clockOffset = 0;
+    }
+
+    @Benchmark
+    public int replayEvent() {
+        if (cursor == events.size()) {
+            // Loop the trace, keeping the clock monotonic
+            clockOffset += events.uptimes[events.size() - 1] - events.uptimes[0] + 60_000;
+            cursor = 0;
+        }
+        String packageName = events.packages[cursor];
+        now = events.uptimes[cursor] + clockOffset;
+        cursor++;
+
+        if (scheduledPackage != null && now >= scheduledAt) {
+            String due = scheduledPackage;
+            scheduledPackage = null;
+            overlayState.onDebounceFired(due);
+        }
+        if (dismissPending) {
+            dismissPending = false;
+            overlayState.onDismissed();
+        }
+
+        debouncer.onWindowEvent(packageName, now);
+        int decision = classifier.onWindowEvent(packageName, now);
+        if (decision == EventClassifier.BLOCK) {
+            overlayState.onBlockCandidate(packageName, true);
+        } else if (decision == EventClassifier.RESET && overlayState.hasBlockState()) {
+            overlayState.onReset();
+        }
+        return decision;
+    }
+}
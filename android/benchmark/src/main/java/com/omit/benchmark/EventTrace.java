@@ -0,0 +1,109 @@
+package com.omit.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A replayable stream of window events: parallel arrays of package names and
+ * monotonic timestamps, with package names interned so replay compares the
+ * same String instances the way the service does.
+ *
+ * Recorded traces are the CSV exported by the app's EventTraceRecorder:
+ * {@code uptimeMs,eventType,packageName[,decision]}. Lines starting with '#'
+ * are comments, and only TYPE_WINDOW_STATE_CHANGED (32) events are kept, since
+ * notifications and overlay records never reach the decision core.
+ */
+final class EventTrace {
+
+    static final int TYPE_WINDOW_STATE_CHANGED = 32;
+
+    static final String OWN_PACKAGE = "com.omit.app";
+    static final String LAUNCHER = "com.google.android.apps.nexuslauncher";
+    static final String SYSTEM_UI = "com.android.systemui";
+
+    final String[] packages;
+    final long[] uptimes;
+
+    private EventTrace(String[] packages, long[] uptimes) {
+        this.packages = packages;
+        this.uptimes = uptimes;
+    }
+
+    int size() {
+        return packages.length;
+    }
+
+    static EventTrace load(String path) throws IOException {
+        Map<String, String> interned = new HashMap<>();
+        List<String> packages = new ArrayList<>();
+        List<Long> uptimes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",", 4);
+                if (fields.length < 3 || fields[2].isEmpty()
+                        || Integer.parseInt(fields[1]) != TYPE_WINDOW_STATE_CHANGED) {
+                    continue;
+                }
+                packages.add(interned.computeIfAbsent(fields[2], p -> p));
+                uptimes.add(Long.parseLong(fields[0]));
+            }
+        }
+        if (packages.isEmpty()) {
+            throw new IOException("No window events in " + path);
+        }
+        long[] times = new long[uptimes.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = uptimes.get(i);
+        }
+        return new EventTrace(packages.toArray(new String[0]), times);
+    }
+
+    /**
+     * Generates launches of random apps, each a burst of 1-6 window events a
+     * few to ~80 ms apart, separated by seconds of use. Some launches go
+     * through the launcher first, and System UI occasionally interjects.
+     */
+    static EventTrace synthetic(long seed, int events, String[] apps) {
+        Random random = new Random(seed);
+        String[] packages = new String[events];
+        long[] uptimes = new long[events];
+        long now = 1_000_000;
+        int i = 0;
+        while (i < events) {
+            if (random.nextInt(3) == 0) {
+                packages[i] = LAUNCHER;
+                uptimes[i++] = now;
+                now += 300 + random.nextInt(1500);
+                continue;
+            }
+            if (random.nextInt(10) == 0) {
+                packages[i] = SYSTEM_UI;
+                uptimes[i++] = now;
+                now += 50 + random.nextInt(200);
+                continue;
+            }
+            String app = apps[random.nextInt(apps.length)];
+            int burst = 1 + random.nextInt(6);
+            for (int b = 0; b < burst && i < events; b++) {
+                packages[i] = app;
+                uptimes[i++] = now;
+                now += 5 + random.nextInt(76);
+            }
+            now += 1000 + random.nextInt(30_000);
+        }
+        return new EventTrace(packages, uptimes);
+    }
+}
@@ -0,0 +1,82 @@
+package com.omit.benchmark;
+
+import com.omit.core.PackagePatternMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches foreground package names against a compiled set of prefix and glob
+ * rules. The score should stay flat as rules grows; only name length matters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageMatchBenchmark {
+
+    /** Number of rules, half prefixes and half single-wildcard globs. */
+    @Param({"10", "1000", "10000"})
+    public int rules;
+
+    private PackagePatternMatcher matcher;
+    private String[] names;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> prefixes = new ArrayList<>();
+        List<String> globs = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            if (i % 2 == 0) {
+                prefixes.add("com.vendor" + i);
+            } else {
+                globs.add("com.*.game" + i);
+            }
+        }
+        matcher = PackagePatternMatcher.compile(globs, prefixes);
+
+        // Mostly misses, like real foreground traffic, with some hits on both rule kinds
+        names = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            int n = random.nextInt(Math.max(1, rules));
+            switch (i % 4) {
+                case 0:
+                    names[i] = "com.vendor" + n + ".app";
+                    break;
+                case 1:
+                    names[i] = "com.studio" + n + ".game" + n;
+                    break;
+                default:
+                    names[i] = "com.example" + n + ".android.app";
+                    break;
+            }
+        }
+        cursor = 0;
+    }
+
+    @Benchmark
+    public boolean match() {
+        String name = names[cursor];
+        cursor = (cursor + 1) & (names.length - 1);
+        return matcher.matches(name);
+    }
+}
@@ -0,0 +1,195 @@
+package com.omit.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Learns per-package overlay debounce and cooldown from window events.
+ *
+ * A launch shows up as a burst of TYPE_WINDOW_STATE_CHANGED events from one
+ * package. The largest gap inside each burst is kept for the last few
+ * launches, and the debounce is that gap plus a margin, so an app that settles
+ * at once is blocked after MIN_DEBOUNCE_MS and a noisy one isn't shown until
+ * its burst is over.
+ *
+ * The cooldown works the same way from the other end. It records how late
+ * stray events from a package still arrive after its overlay is dismissed.
+ *
+ * Both fall back to the old fixed values until enough samples exist, and both
+ * are clamped to safe bounds. Learned values live in memory only.
+ * All times are from a monotonic millisecond clock (SystemClock.uptimeMillis()
+ * on the device).
+ */
+public class AdaptiveDebouncer {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 50;
+    public static final long MIN_DEBOUNCE_MS = 16;
+    public static final long MAX_DEBOUNCE_MS = 250;
+    private static final long DEBOUNCE_MARGIN_MS = 10;
+
+    public static final long DEFAULT_COOLDOWN_MS = 2000;
+    public static final long MIN_COOLDOWN_MS = 500;
+    public static final long MAX_COOLDOWN_MS = 2000;
+    private static final long COOLDOWN_MARGIN_MS = 250;
+
+    // Events further apart than this aren't part of the same launch
+    private static final long BURST_WINDOW_MS = 500;
+    // Number of recent launches/dismissals remembered per package
+    private static final int WINDOW = 8;
+    private static final int MIN_SAMPLES = 3;
+    private static final int MAX_PACKAGES = 256;
+
+    private static AdaptiveDebouncer instance;
+
+    /** Learned state for one package. Guarded by the AdaptiveDebouncer lock. */
+    private static final class Stats {
+        final long[] burstGaps = new long[WINDOW];
+        int bursts;
+        final long[] strayOffsets = new long[WINDOW];
+        int dismissals;
+        long lastDismissedAt = -1;
+    }
+
+    private final Map<String, Stats> stats = new LinkedHashMap<String, Stats>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stats> eldest) {
+            return size() > MAX_PACKAGES;
+        }
+    };
+
+    // Burst currently being observed
+    private String burstPackage = null;
+    private long burstLastEventAt;
+    private long burstMaxGap;
+
+    public static synchronized AdaptiveDebouncer get() {
+        if (instance == null) {
+            instance = new AdaptiveDebouncer();
+        }
+        return instance;
+    }
+
+    /** Feeds a TYPE_WINDOW_STATE_CHANGED event. */
+    public synchronized void onWindowEvent(String packageName, long uptimeMs) {
+        if (packageName.equals(burstPackage) && uptimeMs - burstLastEventAt <= BURST_WINDOW_MS) {
+            burstMaxGap = Math.max(burstMaxGap, uptimeMs - burstLastEventAt);
+        } else {
+            closeBurst();
+            burstPackage = packageName;
+            burstMaxGap = 0;
+        }
+        burstLastEventAt = uptimeMs;
+
+        Stats s = stats.get(packageName);
+        if (s != null && s.lastDismissedAt >= 0) {
+            long offset = uptimeMs - s.lastDismissedAt;
+            if (offset <= MAX_COOLDOWN_MS) {
+                int slot = (s.dismissals - 1) % WINDOW;
+                s.strayOffsets[slot] = Math.max(s.strayOffsets[slot], offset);
+            } else {
+                s.lastDismissedAt = -1;
+            }
+        }
+    }
+
+    public synchronized void onDismissed(String packageName, long uptimeMs) {
+        Stats s = statsFor(packageName);
+        s.strayOffsets[s.dismissals % WINDOW] = 0;
+        s.dismissals++;
+        s.lastDismissedAt = uptimeMs;
+    }
+
+    public synchronized boolean isCoolingDown(String packageName, long uptimeMs) {
+        Stats s = stats.get(packageName);
+        return s != null && s.lastDismissedAt >= 0 && uptimeMs - s.lastDismissedAt < cooldownMs(s);
+    }
+
+    public synchronized long debounceMs(String packageName) {
+        return debounceMs(stats.get(packageName));
+    }
+
+    public synchronized long cooldownMs(String packageName) {
+        return cooldownMs(stats.get(packageName));
+    }
+
+    /** Snapshot of the learned values, for inspection. */
+    public synchronized List<Entry> snapshot() {
+        closeBurst();
+        List<Entry> entries = new ArrayList<>(stats.size());
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            entries.add(new Entry(e.getKey(), debounceMs(s), cooldownMs(s), s.bursts, s.dismissals));
+        }
+        return entries;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        burstPackage = null;
+    }
+
+    public static final class Entry {
+        public final String packageName;
+        public final long debounceMs;
+        public final long cooldownMs;
+        public final int launches;
+        public final int dismissals;
+
+        Entry(String packageName, long debounceMs, long cooldownMs, int launches, int dismissals) {
+            this.packageName = packageName;
+            this.debounceMs = debounceMs;
+            this.cooldownMs = cooldownMs;
+            this.launches = launches;
+            this.dismissals = dismissals;
+        }
+    }
+
+    private void closeBurst() {
+        if (burstPackage == null) {
+            return;
+        }
+        Stats s = statsFor(burstPackage);
+        s.burstGaps[s.bursts % WINDOW] = burstMaxGap;
+        s.bursts++;
+        burstPackage = null;
+    }
+
+    private Stats statsFor(String packageName) {
+        Stats s = stats.get(packageName);
+        if (s == null) {
+            s = new Stats();
+            stats.put(packageName, s);
+        }
+        return s;
+    }
+
+    private static long debounceMs(Stats s) {
+        if (s == null || s.bursts < MIN_SAMPLES) {
+            return DEFAULT_DEBOUNCE_MS;
+        }
+        long maxGap = max(s.burstGaps, Math.min(s.bursts, WINDOW));
+        return clamp(maxGap + DEBOUNCE_MARGIN_MS, MIN_DEBOUNCE_MS, MAX_DEBOUNCE_MS);
+    }
+
+    private static long cooldownMs(Stats s) {
+        if (s == null || s.dismissals < MIN_SAMPLES) {
+            return DEFAULT_COOLDOWN_MS;
+        }
+        long maxOffset = max(s.strayOffsets, Math.min(s.dismissals, WINDOW));
+        return clamp(maxOffset + COOLDOWN_MARGIN_MS, MIN_COOLDOWN_MS, MAX_COOLDOWN_MS);
+    }
+
+    private static long max(long[] values, int count) {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,108 @@
+package com.omit.core;
+
+import java.util.Set;
+
+/**
+ * Classifies foreground window changes and tracks the foreground session.
+ *
+ * Fed one TYPE_WINDOW_STATE_CHANGED at a time, in order, from a single
+ * thread. Returns what the event means for the overlay, and reports finished
+ * usage sessions to the {@link UsageListener}. Holds no Android state, so the
+ * same instance can be driven by AppBlockerService or by a benchmark replaying
+ * a recorded stream.
+ */
+public final class EventClassifier {
+
+    /** Nothing to do for the overlay. */
+    public static final int IGNORE = 0;
+    /** Left blocked territory: cancel any pending block and forget the last one. */
+    public static final int RESET = 1;
+    /** A blocked package is in the foreground. */
+    public static final int BLOCK = 2;
+
+    // Sessions this short are app-switch noise and aren't reported
+    public static final long MIN_SESSION_MS = 1000;
+
+    public interface PackageFilter {
+        boolean contains(String packageName);
+    }
+
+    public interface UsageListener {
+        /** A foreground session longer than MIN_SESSION_MS ended. */
+        void onSessionEnded(String packageName, long startMs, long endMs);
+
+        /** A different package came to the foreground at sinceMs. */
+        void onForegroundChanged(String packageName, long sinceMs);
+    }
+
+    private final String ownPackage;
+    private final Set<String> launcherPackages;
+    private final PackageFilter blocklist;
+    private final UsageListener usageListener;
+
+    private String currentPackage = "";
+    private long lastAppChangeTime = 0;
+
+    public EventClassifier(String ownPackage, Set<String> launcherPackages, PackageFilter blocklist,
+                           UsageListener usageListener) {
+        this.ownPackage = ownPackage;
+        this.launcherPackages = launcherPackages;
+        this.blocklist = blocklist;
+        this.usageListener = usageListener;
+    }
+
+    /** Feeds a window change observed at wall-clock time nowMs; returns IGNORE, RESET or BLOCK. */
+    public int onWindowEvent(String packageName, long nowMs) {
+        if (!packageName.equals(currentPackage)) {
+            endSession(nowMs);
+            currentPackage = packageName;
+            lastAppChangeTime = nowMs;
+            usageListener.onForegroundChanged(packageName, nowMs);
+        }
+
+        // Don't block our own app, and reset when the user goes to home/launcher
+        if (packageName.equals(ownPackage) || launcherPackages.contains(packageName)) {
+            return RESET;
+        }
+
+        if (blocklist.contains(packageName)) {
+            return BLOCK;
+        }
+
+        // System UI and the android package fire transient window changes that
+        // shouldn't cancel a real app block
+        if (isSystemPackage(packageName)) {
+            return IGNORE;
+        }
+        return RESET;
+    }
+
+    /** Ends the current foreground session at nowMs, e.g. when monitoring stops. */
+    public void endSession(long nowMs) {
+        if (lastAppChangeTime > 0 && !currentPackage.isEmpty()
+                && nowMs - lastAppChangeTime > MIN_SESSION_MS) {
+            usageListener.onSessionEnded(currentPackage, lastAppChangeTime, nowMs);
+        }
+        currentPackage = "";
+        lastAppChangeTime = 0;
+    }
+
+    /** True for our own package and launchers, which are never blocked or limited. */
+    public boolean isExempt(String packageName) {
+        return packageName.equals(ownPackage) || launcherPackages.contains(packageName);
+    }
+
+    public String getForegroundPackage() {
+        return currentPackage;
+    }
+
+    public long getForegroundSince() {
+        return lastAppChangeTime;
+    }
+
+    private static boolean isSystemPackage(String packageName) {
+        return packageName.equals("com.android.systemui") ||
+                packageName.equals("android") ||
+                packageName.equals("com.google.android.permissioncontroller");
+    }
+}
@@ -0,0 +1,110 @@
+package com.omit.core;
+
+/**
+ * Decides when the blocking overlay is scheduled, cancelled and shown.
+ *
+ * Tracks the package whose block is pending (waiting out its debounce) and
+ * the one last blocked (so a blocked app isn't re-blocked while its overlay is
+ * up). Debounce and cooldown come from {@link AdaptiveDebouncer}. Timing is
+ * left to the {@link Output}, which schedules onDebounceFired on the thread
+ * that drives this class. Single-threaded; pending and last are only
+ * published for cheap cross-thread "anything to reset?" checks.
+ */
+public final class OverlayStateMachine {
+
+    public interface Clock {
+        /** Monotonic milliseconds. */
+        long uptimeMillis();
+    }
+
+    public interface Output {
+        /** Replace any scheduled show with one for packageName after delayMs. */
+        void scheduleShow(String packageName, long delayMs);
+
+        void cancelShow();
+
+        void show(String packageName);
+    }
+
+    private final AdaptiveDebouncer debouncer;
+    private final Clock clock;
+    private final Output output;
+
+    private volatile String pendingBlockedPackage = "";
+    private volatile String lastBlockedPackage = "";
+
+    public OverlayStateMachine(AdaptiveDebouncer debouncer, Clock clock, Output output) {
+        this.debouncer = debouncer;
+        this.clock = clock;
+        this.output = output;
+    }
+
+    /**
+     * A blocked package is in the foreground. restartDebounce is true for
+     * window events, where a repeat for the pending package restarts the
+     * debounce; false for timers such as the daily-limit check. Returns true
+     * if this started a new pending block.
+     */
+    public boolean onBlockCandidate(String packageName, boolean restartDebounce) {
+        if (packageName.equals(pendingBlockedPackage)) {
+            if (restartDebounce) {
+                // Same package, reset debounce timer
+                output.scheduleShow(packageName, debouncer.debounceMs(packageName));
+            }
+            return false;
+        }
+        if (packageName.equals(lastBlockedPackage)) {
+            return false;
+        }
+        pendingBlockedPackage = packageName;
+        output.scheduleShow(packageName, debouncer.debounceMs(packageName));
+        return true;
+    }
+
+    /** The scheduled show for packageName is due. Returns true if the overlay was shown. */
+    public boolean onDebounceFired(String packageName) {
+        pendingBlockedPackage = "";
+        // Check per-package cooldown so that dismissing app A doesn't give app B
+        // a free window to bypass blocking.
+        if (debouncer.isCoolingDown(packageName, clock.uptimeMillis())) {
+            return false;
+        }
+        lastBlockedPackage = packageName;
+        output.show(packageName);
+        return true;
+    }
+
+    /** The user left blocked territory; see EventClassifier.RESET. */
+    public void onReset() {
+        cancelPending();
+        lastBlockedPackage = "";
+    }
+
+    /** The overlay was dismissed; starts the dismissed package's cooldown. */
+    public void onDismissed() {
+        if (!lastBlockedPackage.isEmpty()) {
+            debouncer.onDismissed(lastBlockedPackage, clock.uptimeMillis());
+        }
+        onReset();
+    }
+
+    /** Safe from any thread. False when onReset would be a no-op. */
+    public boolean hasBlockState() {
+        return !pendingBlockedPackage.isEmpty() || !lastBlockedPackage.isEmpty();
+    }
+
+    public String getPendingPackage() {
+        return pendingBlockedPackage;
+    }
+
+    public String getLastBlockedPackage() {
+        return lastBlockedPackage;
+    }
+
+    private void cancelPending() {
+        if (!pendingBlockedPackage.isEmpty()) {
+            output.cancelShow();
+            pendingBlockedPackage = "";
+        }
+    }
+}
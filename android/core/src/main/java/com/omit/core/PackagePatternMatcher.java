@@ -0,0 +1,193 @@
+package com.omit.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Package-name prefix and glob rules compiled into a single character trie.
+ *
+ * Patterns are dot-separated like package names. A {@code *} segment matches
+ * exactly one segment, and a trailing {@code **} segment matches the rest of
+ * the name, including nothing: {@code com.*.games} matches
+ * {@code com.acme.games}, and {@code com.facebook.**} matches
+ * {@code com.facebook} and everything under it. A prefix rule
+ * {@code com.facebook} is shorthand for the latter.
+ *
+ * Matching walks the name once through the trie without allocating, so its
+ * cost is proportional to the name's length regardless of how many rules were
+ * compiled; only {@code *} segments that compete with a literal branch at the
+ * same position add backtracking. Immutable once built, so it can be shared
+ * with the event thread.
+ */
+public final class PackagePatternMatcher {
+
+    public static final PackagePatternMatcher EMPTY = new Builder().build();
+
+    private final Node root;
+    private final int size;
+
+    private PackagePatternMatcher(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PackagePatternMatcher compile(Collection<String> globs, Collection<String> prefixes) {
+        Builder builder = new Builder();
+        for (String glob : globs) {
+            builder.addGlob(glob);
+        }
+        for (String prefix : prefixes) {
+            builder.addPrefix(prefix);
+        }
+        return builder.build();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Number of distinct rules compiled in. */
+    public int size() {
+        return size;
+    }
+
+    public boolean matches(CharSequence packageName) {
+        return size != 0 && match(root, packageName, 0);
+    }
+
+    private static boolean match(Node node, CharSequence name, int i) {
+        int length = name.length();
+        while (true) {
+            if (node.subtree && (i == length || name.charAt(i) == '.')) {
+                return true;
+            }
+            if (i == length) {
+                return node.terminal;
+            }
+            char c = name.charAt(i);
+            Node literal = node.child(c);
+            if (node.star != null && c != '.') {
+                int end = i;
+                while (end < length && name.charAt(end) != '.') {
+                    end++;
+                }
+                if (literal == null) {
+                    // No competing literal branch; continue without recursing
+                    node = node.star;
+                    i = end;
+                    continue;
+                }
+                if (match(node.star, name, end)) {
+                    return true;
+                }
+            }
+            if (literal == null) {
+                return false;
+            }
+            node = literal;
+            i++;
+        }
+    }
+
+    private static final class Node {
+        // Sorted for binary search; built once, so arrays beat maps here
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        // Child reached by a whole "*" segment
+        Node star;
+        // A full pattern ends here
+        boolean terminal;
+        // A prefix ends here: also matches anything continuing with '.'
+        boolean subtree;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            Node node = new Node();
+            newKeys[insert] = c;
+            newChildren[insert] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    public static final class Builder {
+        private final Node root = new Node();
+        private int size = 0;
+
+        /**
+         * Adds a glob. Throws IllegalArgumentException for empty segments,
+         * {@code *} mixed into a segment, or {@code **} anywhere but last.
+         */
+        public Builder addGlob(String glob) {
+            String[] segments = glob.split("\\.", -1);
+            Node node = root;
+            for (int s = 0; s < segments.length; s++) {
+                String segment = segments[s];
+                if (segment.equals("**")) {
+                    if (s != segments.length - 1 || s == 0) {
+                        throw new IllegalArgumentException("\"**\" must be the last segment of \"" + glob + "\"");
+                    }
+                    return mark(node, true);
+                }
+                if (s > 0) {
+                    node = node.childOrCreate('.');
+                }
+                if (segment.equals("*")) {
+                    if (node.star == null) {
+                        node.star = new Node();
+                    }
+                    node = node.star;
+                    continue;
+                }
+                if (segment.isEmpty() || segment.indexOf('*') >= 0) {
+                    throw new IllegalArgumentException("Invalid segment \"" + segment + "\" in \"" + glob + "\"");
+                }
+                for (int i = 0; i < segment.length(); i++) {
+                    node = node.childOrCreate(segment.charAt(i));
+                }
+            }
+            return mark(node, false);
+        }
+
+        /** Adds a prefix rule: the package itself and everything under it. */
+        public Builder addPrefix(String prefix) {
+            if (prefix.endsWith(".")) {
+                prefix = prefix.substring(0, prefix.length() - 1);
+            }
+            return addGlob(prefix + ".**");
+        }
+
+        public PackagePatternMatcher build() {
+            return new PackagePatternMatcher(root, size);
+        }
+
+        private Builder mark(Node node, boolean subtree) {
+            boolean added = subtree ? !node.subtree : !node.terminal;
+            if (subtree) {
+                node.subtree = true;
+            } else {
+                node.terminal = true;
+            }
+            if (added) {
+                size++;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.omit.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveDebouncerTest {
+
+    private static final String APP = "com.example.app";
+    private static final String OTHER = "com.example.other";
+
+    private AdaptiveDebouncer debouncer;
+    // Far enough apart that every burst and dismissal is independent
+    private long now;
+
+    @Before
+    public void setUp() {
+        debouncer = new AdaptiveDebouncer();
+        now = 1_000_000;
+    }
+
+    /** One launch of APP whose two window events are gapMs apart. */
+    private void burst(long gapMs) {
+        debouncer.onWindowEvent(APP, now);
+        debouncer.onWindowEvent(APP, now + gapMs);
+        // Another package closes the burst
+        debouncer.onWindowEvent(OTHER, now + gapMs + 10_000);
+        now += 100_000;
+    }
+
+    /** One dismissal of APP, with a stray event offsetMs later if offsetMs is positive. */
+    private void dismissal(long offsetMs) {
+        debouncer.onDismissed(APP, now);
+        if (offsetMs > 0) {
+            debouncer.onWindowEvent(APP, now + offsetMs);
+        }
+        now += 100_000;
+    }
+
+    @Test
+    public void debounceKeepsDefaultUntilThreeLaunches() {
+        burst(100);
+        burst(100);
+        assertEquals(AdaptiveDebouncer.DEFAULT_DEBOUNCE_MS, debouncer.debounceMs(APP));
+
+        burst(100);
+        assertEquals(110, debouncer.debounceMs(APP));
+    }
+
+    @Test
+    public void debounceFollowsLargestGapPlusMargin() {
+        burst(20);
+        burst(120);
+        burst(60);
+
+        assertEquals(130, debouncer.debounceMs(APP));
+    }
+
+    @Test
+    public void debounceIsClampedToMinimum() {
+        burst(0);
+        burst(0);
+        burst(0);
+
+        assertEquals(AdaptiveDebouncer.MIN_DEBOUNCE_MS, debouncer.debounceMs(APP));
+    }
+
+    @Test
+    public void debounceIsClampedToMaximum() {
+        burst(400);
+        burst(400);
+        burst(400);
+
+        assertEquals(AdaptiveDebouncer.MAX_DEBOUNCE_MS, debouncer.debounceMs(APP));
+    }
+
+    @Test
+    public void cooldownKeepsDefaultUntilThreeDismissals() {
+        dismissal(700);
+        dismissal(700);
+        assertEquals(AdaptiveDebouncer.DEFAULT_COOLDOWN_MS, debouncer.cooldownMs(APP));
+
+        dismissal(700);
+        assertEquals(950, debouncer.cooldownMs(APP));
+    }
+
+    @Test
+    public void cooldownIsClampedToMinimum() {
+        dismissal(0);
+        dismissal(0);
+        dismissal(0);
+
+        assertEquals(AdaptiveDebouncer.MIN_COOLDOWN_MS, debouncer.cooldownMs(APP));
+    }
+
+    @Test
+    public void cooldownIsClampedToMaximum() {
+        dismissal(1_900);
+        dismissal(1_900);
+        dismissal(1_900);
+
+        assertEquals(AdaptiveDebouncer.MAX_COOLDOWN_MS, debouncer.cooldownMs(APP));
+    }
+
+    @Test
+    public void coolingDownUntilCooldownElapses() {
+        debouncer.onDismissed(APP, now);
+
+        assertTrue(debouncer.isCoolingDown(APP, now + AdaptiveDebouncer.DEFAULT_COOLDOWN_MS - 1));
+        assertFalse(debouncer.isCoolingDown(APP, now + AdaptiveDebouncer.DEFAULT_COOLDOWN_MS));
+        assertFalse(debouncer.isCoolingDown(OTHER, now));
+    }
+
+    @Test
+    public void resetForgetsLearnedValues() {
+        burst(100);
+        burst(100);
+        burst(100);
+
+        debouncer.reset();
+
+        assertEquals(AdaptiveDebouncer.DEFAULT_DEBOUNCE_MS, debouncer.debounceMs(APP));
+    }
+}
@@ -0,0 +1,124 @@
+package com.omit.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventClassifierTest {
+
+    private static final String OWN = "com.omit.app";
+    private static final String LAUNCHER = "com.android.launcher3";
+    private static final String BLOCKED = "com.example.blocked";
+    private static final String ALLOWED = "com.example.allowed";
+
+    /** Records sessions as "package start end" and foreground changes as "fg package since". */
+    private static final class RecordingListener implements EventClassifier.UsageListener {
+        final List<String> sessions = new ArrayList<>();
+        final List<String> foreground = new ArrayList<>();
+
+        @Override
+        public void onSessionEnded(String packageName, long startMs, long endMs) {
+            sessions.add(packageName + " " + startMs + " " + endMs);
+        }
+
+        @Override
+        public void onForegroundChanged(String packageName, long sinceMs) {
+            foreground.add("fg " + packageName + " " + sinceMs);
+        }
+    }
+
+    private RecordingListener listener;
+    private EventClassifier classifier;
+
+    @Before
+    public void setUp() {
+        listener = new RecordingListener();
+        classifier = new EventClassifier(OWN, Set.of(LAUNCHER), BLOCKED::equals, listener);
+    }
+
+    @Test
+    public void blockedPackageIsBlock() {
+        assertEquals(EventClassifier.BLOCK, classifier.onWindowEvent(BLOCKED, 1_000));
+    }
+
+    @Test
+    public void ownPackageAndLaunchersReset() {
+        assertEquals(EventClassifier.RESET, classifier.onWindowEvent(OWN, 1_000));
+        assertEquals(EventClassifier.RESET, classifier.onWindowEvent(LAUNCHER, 2_000));
+        assertTrue(classifier.isExempt(OWN));
+        assertTrue(classifier.isExempt(LAUNCHER));
+        assertFalse(classifier.isExempt(BLOCKED));
+    }
+
+    @Test
+    public void otherAppResets() {
+        assertEquals(EventClassifier.RESET, classifier.onWindowEvent(ALLOWED, 1_000));
+    }
+
+    @Test
+    public void systemUiIsIgnoredRatherThanReset() {
+        classifier.onWindowEvent(BLOCKED, 1_000);
+
+        assertEquals(EventClassifier.IGNORE, classifier.onWindowEvent("com.android.systemui", 1_100));
+        assertEquals(EventClassifier.IGNORE, classifier.onWindowEvent("android", 1_200));
+        assertEquals(EventClassifier.IGNORE,
+                classifier.onWindowEvent("com.google.android.permissioncontroller", 1_300));
+    }
+
+    @Test
+    public void blocklistWinsOverSystemPackageCheck() {
+        EventClassifier blockingSystemUi = new EventClassifier(OWN, Set.of(LAUNCHER),
+                "com.android.systemui"::equals, listener);
+
+        assertEquals(EventClassifier.BLOCK, blockingSystemUi.onWindowEvent("com.android.systemui", 1_000));
+    }
+
+    @Test
+    public void foregroundChangeIsReportedOncePerPackage() {
+        classifier.onWindowEvent(ALLOWED, 1_000);
+        classifier.onWindowEvent(ALLOWED, 1_500);
+        classifier.onWindowEvent(BLOCKED, 2_000);
+
+        assertEquals(List.of("fg " + ALLOWED + " 1000", "fg " + BLOCKED + " 2000"), listener.foreground);
+        assertEquals(BLOCKED, classifier.getForegroundPackage());
+        assertEquals(2_000, classifier.getForegroundSince());
+    }
+
+    @Test
+    public void sessionIsHandedOffWhenForegroundChanges() {
+        classifier.onWindowEvent(ALLOWED, 10_000);
+        classifier.onWindowEvent(ALLOWED, 12_000);
+        classifier.onWindowEvent(BLOCKED, 15_000);
+
+        assertEquals(List.of(ALLOWED + " 10000 15000"), listener.sessions);
+    }
+
+    @Test
+    public void shortSessionsAreNotReported() {
+        classifier.onWindowEvent(ALLOWED, 10_000);
+        classifier.onWindowEvent(BLOCKED, 10_000 + EventClassifier.MIN_SESSION_MS);
+
+        assertTrue(listener.sessions.isEmpty());
+    }
+
+    @Test
+    public void endSessionReportsAndClearsForeground() {
+        classifier.onWindowEvent(BLOCKED, 10_000);
+
+        classifier.endSession(20_000);
+
+        assertEquals(List.of(BLOCKED + " 10000 20000"), listener.sessions);
+        assertEquals("", classifier.getForegroundPackage());
+
+        // Nothing left to end
+        classifier.endSession(30_000);
+        assertEquals(1, listener.sessions.size());
+    }
+}
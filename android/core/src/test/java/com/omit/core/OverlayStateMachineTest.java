@@ -0,0 +1,148 @@
+package com.omit.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OverlayStateMachineTest {
+
+    private static final String APP_A = "com.example.a";
+    private static final String APP_B = "com.example.b";
+
+    /** Records every Output call as a string, e.g. "schedule com.example.a 50". */
+    private static final class RecordingOutput implements OverlayStateMachine.Output {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void scheduleShow(String packageName, long delayMs) {
+            calls.add("schedule " + packageName + " " + delayMs);
+        }
+
+        @Override
+        public void cancelShow() {
+            calls.add("cancel");
+        }
+
+        @Override
+        public void show(String packageName) {
+            calls.add("show " + packageName);
+        }
+    }
+
+    private long now;
+    private RecordingOutput output;
+    private OverlayStateMachine machine;
+
+    @Before
+    public void setUp() {
+        now = 100_000;
+        output = new RecordingOutput();
+        machine = new OverlayStateMachine(new AdaptiveDebouncer(), () -> now, output);
+    }
+
+    @Test
+    public void newCandidateBecomesPendingAndSchedulesShow() {
+        assertTrue(machine.onBlockCandidate(APP_A, true));
+
+        assertEquals(APP_A, machine.getPendingPackage());
+        assertEquals("", machine.getLastBlockedPackage());
+        assertTrue(machine.hasBlockState());
+        assertEquals(List.of("schedule " + APP_A + " " + AdaptiveDebouncer.DEFAULT_DEBOUNCE_MS), output.calls);
+    }
+
+    @Test
+    public void repeatForPendingPackageRestartsDebounceOnlyForWindowEvents() {
+        machine.onBlockCandidate(APP_A, true);
+        output.calls.clear();
+
+        assertFalse(machine.onBlockCandidate(APP_A, false));
+        assertTrue(output.calls.isEmpty());
+
+        assertFalse(machine.onBlockCandidate(APP_A, true));
+        assertEquals(List.of("schedule " + APP_A + " " + AdaptiveDebouncer.DEFAULT_DEBOUNCE_MS), output.calls);
+    }
+
+    @Test
+    public void firedDebounceShowsAndMovesPendingToLastBlocked() {
+        machine.onBlockCandidate(APP_A, true);
+
+        assertTrue(machine.onDebounceFired(APP_A));
+
+        assertEquals("", machine.getPendingPackage());
+        assertEquals(APP_A, machine.getLastBlockedPackage());
+        assertEquals("show " + APP_A, output.calls.get(output.calls.size() - 1));
+    }
+
+    @Test
+    public void lastBlockedPackageIsNotBlockedAgainWhileOverlayIsUp() {
+        machine.onBlockCandidate(APP_A, true);
+        machine.onDebounceFired(APP_A);
+        output.calls.clear();
+
+        assertFalse(machine.onBlockCandidate(APP_A, true));
+        assertTrue(output.calls.isEmpty());
+
+        // Another package still gets its own pending block
+        assertTrue(machine.onBlockCandidate(APP_B, true));
+        assertEquals(APP_B, machine.getPendingPackage());
+        assertEquals(APP_A, machine.getLastBlockedPackage());
+    }
+
+    @Test
+    public void resetCancelsPendingAndForgetsLastBlocked() {
+        machine.onBlockCandidate(APP_A, true);
+        machine.onDebounceFired(APP_A);
+        machine.onBlockCandidate(APP_B, true);
+        output.calls.clear();
+
+        machine.onReset();
+
+        assertEquals(List.of("cancel"), output.calls);
+        assertEquals("", machine.getPendingPackage());
+        assertEquals("", machine.getLastBlockedPackage());
+        assertFalse(machine.hasBlockState());
+        assertTrue(machine.onBlockCandidate(APP_A, true));
+    }
+
+    @Test
+    public void resetWithNothingPendingDoesNotCancel() {
+        machine.onReset();
+
+        assertTrue(output.calls.isEmpty());
+    }
+
+    @Test
+    public void dismissedPackageCoolsDownUntilCooldownExpires() {
+        machine.onBlockCandidate(APP_A, true);
+        machine.onDebounceFired(APP_A);
+        machine.onDismissed();
+        assertFalse(machine.hasBlockState());
+
+        now += AdaptiveDebouncer.DEFAULT_COOLDOWN_MS - 1;
+        machine.onBlockCandidate(APP_A, true);
+        assertFalse(machine.onDebounceFired(APP_A));
+        assertEquals("", machine.getLastBlockedPackage());
+
+        now += 1;
+        machine.onBlockCandidate(APP_A, true);
+        assertTrue(machine.onDebounceFired(APP_A));
+        assertEquals(APP_A, machine.getLastBlockedPackage());
+    }
+
+    @Test
+    public void cooldownIsPerPackage() {
+        machine.onBlockCandidate(APP_A, true);
+        machine.onDebounceFired(APP_A);
+        machine.onDismissed();
+
+        // Dismissing A must not give B a free window
+        machine.onBlockCandidate(APP_B, true);
+        assertTrue(machine.onDebounceFired(APP_B));
+    }
+}
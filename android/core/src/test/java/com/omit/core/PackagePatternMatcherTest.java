@@ -0,0 +1,134 @@
+package com.omit.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackagePatternMatcherTest {
+
+    private static PackagePatternMatcher globs(String... globs) {
+        return PackagePatternMatcher.compile(Arrays.asList(globs), Collections.emptyList());
+    }
+
+    private static PackagePatternMatcher prefixes(String... prefixes) {
+        return PackagePatternMatcher.compile(Collections.emptyList(), Arrays.asList(prefixes));
+    }
+
+    @Test
+    public void emptyMatchesNothing() {
+        assertTrue(PackagePatternMatcher.EMPTY.isEmpty());
+        assertFalse(PackagePatternMatcher.EMPTY.matches("com.example"));
+        assertFalse(PackagePatternMatcher.EMPTY.matches(""));
+    }
+
+    @Test
+    public void literalGlobMatchesExactlyThatName() {
+        PackagePatternMatcher matcher = globs("com.example.app");
+
+        assertTrue(matcher.matches("com.example.app"));
+        assertFalse(matcher.matches("com.example"));
+        assertFalse(matcher.matches("com.example.app2"));
+        assertFalse(matcher.matches("com.example.app.sub"));
+    }
+
+    @Test
+    public void starMatchesExactlyOneSegment() {
+        PackagePatternMatcher matcher = globs("com.*");
+
+        assertTrue(matcher.matches("com.acme"));
+        assertFalse(matcher.matches("com"));
+        assertFalse(matcher.matches("com.acme.x"));
+        assertFalse(matcher.matches("org.acme"));
+    }
+
+    @Test
+    public void starInTheMiddle() {
+        PackagePatternMatcher matcher = globs("com.*.games");
+
+        assertTrue(matcher.matches("com.acme.games"));
+        assertFalse(matcher.matches("com.games"));
+        assertFalse(matcher.matches("com.acme.sub.games"));
+        assertFalse(matcher.matches("com.acme.gamesx"));
+    }
+
+    @Test
+    public void starBacktracksWhenCompetingLiteralBranchFails() {
+        // At "com." both the literal "acme" branch and the star apply
+        PackagePatternMatcher matcher = globs("com.acme.tools", "com.*.games");
+
+        assertTrue(matcher.matches("com.acme.tools"));
+        assertTrue(matcher.matches("com.acme.games"));
+        assertTrue(matcher.matches("com.other.games"));
+        assertFalse(matcher.matches("com.acme.other"));
+        assertFalse(matcher.matches("com.other.tools"));
+    }
+
+    @Test
+    public void literalBranchWinsWhenStarFails() {
+        PackagePatternMatcher matcher = globs("com.*.games", "com.acme.x.y");
+
+        assertTrue(matcher.matches("com.acme.x.y"));
+        assertFalse(matcher.matches("com.acme.x"));
+    }
+
+    @Test
+    public void prefixMatchesItselfAndSubtreeOnSegmentBoundary() {
+        PackagePatternMatcher matcher = prefixes("com.facebook");
+
+        assertTrue(matcher.matches("com.facebook"));
+        assertTrue(matcher.matches("com.facebook.katana"));
+        assertTrue(matcher.matches("com.facebook.orca.beta"));
+        assertFalse(matcher.matches("com.facebookx"));
+        assertFalse(matcher.matches("com.face"));
+    }
+
+    @Test
+    public void prefixIgnoresTrailingDot() {
+        assertTrue(prefixes("com.facebook.").matches("com.facebook.katana"));
+        assertTrue(prefixes("com.facebook.").matches("com.facebook"));
+    }
+
+    @Test
+    public void trailingDoubleStarIsASubtree() {
+        PackagePatternMatcher matcher = globs("com.*.**");
+
+        assertTrue(matcher.matches("com.acme"));
+        assertTrue(matcher.matches("com.acme.x"));
+        assertTrue(matcher.matches("com.acme.x.y"));
+        assertFalse(matcher.matches("com"));
+        assertFalse(matcher.matches("org.acme"));
+    }
+
+    @Test
+    public void sizeCountsDistinctRules() {
+        PackagePatternMatcher matcher = new PackagePatternMatcher.Builder()
+                .addGlob("com.a")
+                .addGlob("com.a")
+                .addPrefix("com.a")
+                .addGlob("com.a.**")
+                .addGlob("com.*")
+                .build();
+
+        // The exact glob, the subtree and the star glob
+        assertEquals(3, matcher.size());
+    }
+
+    @Test
+    public void rejectsMalformedGlobs() {
+        String[] invalid = { "", "com..app", "com.", ".com", "com.a*", "com.*x.app", "**", "com.**.app" };
+        for (String glob : invalid) {
+            try {
+                new PackagePatternMatcher.Builder().addGlob(glob);
+                fail("Expected \"" + glob + "\" to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
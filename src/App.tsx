@@ -56,38 +56,33 @@ const App = () => {
         // Request notification permissions
         NotificationManager.requestPermissions();
         
-        // Listen for native Android usage updates
+        // Listen for native Android usage. The native side coalesces per-app
+        // durations and delivers one batch per flush interval (or on resume),
+        // so we only read storage once per batch instead of once per app switch.
         let nativeListener: any;
-        const pendingUsageRef = { current: 0 };
-        
-        // Flush pending usage to storage every 10 seconds to avoid stuttering from frequent writes
-        const usageFlushInterval = setInterval(() => {
-            if (pendingUsageRef.current > 0) {
-                console.log('[App] Flushing pending usage:', pendingUsageRef.current);
-                storage.addAppUsageTime(pendingUsageRef.current);
-                pendingUsageRef.current = 0;
-            }
-        }, 10000);
 
         if (isCapacitor()) {
-             // We cast to any because addListener is not strictly typed in the interface yet
-             // @ts-ignore
-             AppBlocker.addListener('usageUpdate', (data: any) => {
-                // console.log('Received native usage:', data); // Log is throttled too to avoid spam
+             AppBlocker.addListener('usageBatch', (batch) => {
                 const persistent = storage.getAndroidPersistentApps();
                 const sessionApps = storage.getAndroidSessionApps();
                 const activeSession = storage.getActiveSession();
-                
-                const isBlocked = persistent.includes(data.packageName) || 
-                                  (activeSession && sessionApps.includes(data.packageName));
-                                  
-                if (isBlocked) {
-                     // Convert ms to minutes for usage tracking (daily limit)
-                     const minutes = data.duration / (1000 * 60);
-                     if (minutes > 0) {
-                         // Accumulate instead of writing immediately
-                         pendingUsageRef.current += minutes;
-                     }
+
+                let totalMs = 0;
+                for (let i = 0; i < batch.packages.length; i++) {
+                    const pkg = batch.packages[i];
+                    const isBlocked = persistent.includes(pkg) ||
+                                      (activeSession && sessionApps.includes(pkg));
+                    if (isBlocked) {
+                        totalMs += batch.durations[i];
+                    }
+                }
+
+                // Convert ms to minutes for usage tracking (daily limit). A
+                // negative total is a correction for over-counted time and is
+                // applied too, or usage would only ever drift upward
+                const minutes = totalMs / (1000 * 60);
+                if (minutes !== 0) {
+                    storage.addAppUsageTime(minutes);
                 }
              }).then((handle: any) => {
                  nativeListener = handle;
@@ -119,13 +114,6 @@ const App = () => {
                      nativeListener();
                  }
              }
-             
-             // Flush any remaining usage before unmounting
-             if (pendingUsageRef.current > 0) {
-                 storage.addAppUsageTime(pendingUsageRef.current);
-                 pendingUsageRef.current = 0;
-             }
-             clearInterval(usageFlushInterval);
         };
     }, []);
 
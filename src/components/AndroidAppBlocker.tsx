@@ -1,4 +1,4 @@
-import { useState, useEffect, memo, useCallback } from "react";
+import { useState, useEffect, useRef, memo, useCallback } from "react";
 import { Button } from "@/components/ui/button";
 import { Card, CardContent, CardHeader, CardTitle } from "@/components/ui/card";
 import { Switch } from "@/components/ui/switch";
@@ -18,7 +18,9 @@ import { toast } from "sonner";
 import AppBlocker, {
   AppInfo,
   PermissionStatus,
+  appIconSrc,
   isCapacitor,
+  streamInstalledApps,
 } from "@/lib/app-blocker";
 import { storage } from "@/lib/storage";
 
@@ -70,9 +72,9 @@ const AppItem = memo(
             "w-12 h-12 flex-shrink-0 rounded-2xl flex items-center justify-center border shadow-inner transition-all duration-500 group-hover:scale-110 group-hover:rotate-3",
             app.blockMode !== 'off' ? "bg-white dark:bg-zinc-800 scale-105" : "bg-muted/50"
           )}>
-            {app.icon ? (
+            {app.iconUrl || app.icon ? (
               <img
-                src={app.icon.startsWith('data:') ? app.icon : `data:image/png;base64,${app.icon}`}
+                src={appIconSrc(app.iconUrl ?? app.icon)}
                 alt={app.appName}
                 className={cn("w-9 h-9 object-contain transition-all duration-500", app.blockMode === 'off' && "grayscale opacity-40 scale-90")}
                 loading="lazy"
@@ -128,7 +130,9 @@ const AppItem = memo(
     return (
       prev.app.packageName === next.app.packageName &&
       prev.app.blockMode === next.app.blockMode &&
-      prev.app.appName === next.app.appName
+      prev.app.appName === next.app.appName &&
+      prev.app.icon === next.app.icon &&
+      prev.app.iconUrl === next.app.iconUrl
     );
   },
 );
@@ -144,42 +148,59 @@ export function AndroidAppBlocker() {
   // Check if we're running in Capacitor (Android app)
   const isAndroid = isCapacitor();
 
-  const loadInstalledApps = useCallback(async () => {
-    try {
-      const { apps } = await AppBlocker.getInstalledApps();
-      const sessionApps = storage.getAndroidSessionApps();
-      const persistentApps = storage.getAndroidPersistentApps();
-
-      const appsWithStatus = apps.map((app) => {
-        let mode: "off" | "session" | "persistent" = "off";
-        if (persistentApps.includes(app.packageName)) mode = "persistent";
-        else if (sessionApps.includes(app.packageName)) mode = "session";
-
-        return {
-          ...app,
-          blockMode: mode,
-        };
-      });
-
-      // Sort: blocked apps first (persistent then session), then alphabetically
-      appsWithStatus.sort((a: BlockedAndroidApp, b: BlockedAndroidApp) => {
-        const scoreA =
-          a.blockMode === "persistent" ? 2 : a.blockMode === "session" ? 1 : 0;
-        const scoreB =
-          b.blockMode === "persistent" ? 2 : b.blockMode === "session" ? 1 : 0;
-
-        if (scoreA !== scoreB) return scoreB - scoreA;
-        return a.appName.localeCompare(b.appName);
-      });
-
-      setInstalledApps(appsWithStatus);
-      setLoading(false);
-    } catch (error) {
-      console.error("Failed to load apps:", error);
-      setLoading(false);
-    }
+  // Cancels the installed-apps stream currently in flight, if any
+  const cancelStreamRef = useRef<(() => void) | null>(null);
+
+  const withBlockModes = useCallback((apps: AppInfo[]): BlockedAndroidApp[] => {
+    const sessionApps = storage.getAndroidSessionApps();
+    const persistentApps = storage.getAndroidPersistentApps();
+
+    const appsWithStatus = apps.map((app) => {
+      let mode: "off" | "session" | "persistent" = "off";
+      if (persistentApps.includes(app.packageName)) mode = "persistent";
+      else if (sessionApps.includes(app.packageName)) mode = "session";
+
+      return {
+        ...app,
+        blockMode: mode,
+      };
+    });
+
+    // Sort: blocked apps first (persistent then session), then alphabetically
+    appsWithStatus.sort((a: BlockedAndroidApp, b: BlockedAndroidApp) => {
+      const scoreA =
+        a.blockMode === "persistent" ? 2 : a.blockMode === "session" ? 1 : 0;
+      const scoreB =
+        b.blockMode === "persistent" ? 2 : b.blockMode === "session" ? 1 : 0;
+
+      if (scoreA !== scoreB) return scoreB - scoreA;
+      return a.appName.localeCompare(b.appName);
+    });
+
+    return appsWithStatus;
   }, []);
 
+  const loadInstalledApps = useCallback(() => {
+    cancelStreamRef.current?.();
+
+    // Labels arrive in pages so the list renders right away; icons come with
+    // local URLs that the image loader fetches lazily
+    const loaded: AppInfo[] = [];
+    cancelStreamRef.current = streamInstalledApps({
+      onPage: (apps, done) => {
+        loaded.push(...apps);
+        setInstalledApps(withBlockModes(loaded));
+        setLoading(false);
+        if (done) cancelStreamRef.current = null;
+      },
+      onError: () => {
+        cancelStreamRef.current = null;
+        setLoading(false);
+        toast.error("Failed to load apps");
+      },
+    });
+  }, [withBlockModes]);
+
   useEffect(() => {
     if (!isAndroid) return;
     checkPermissions();
@@ -207,9 +228,10 @@ export function AndroidAppBlocker() {
 
     setupListener();
 
-    // Subscribe to storage changes to keep UI in sync
+    // Subscribe to storage changes to keep UI in sync. Only block modes can
+    // change here, so re-derive them instead of re-listing installed apps
     const unsub = storage.onChange("blockedApps", () => {
-      loadInstalledApps();
+      setInstalledApps((prev) => withBlockModes(prev));
     });
 
     return () => {
@@ -220,8 +242,11 @@ export function AndroidAppBlocker() {
         }
       }
       unsub();
+      // Stop rendering icons for a screen the user has left
+      cancelStreamRef.current?.();
+      cancelStreamRef.current = null;
     };
-  }, [isAndroid, loadInstalledApps]);
+  }, [isAndroid, loadInstalledApps, withBlockModes]);
 
   const checkPermissions = async () => {
     try {
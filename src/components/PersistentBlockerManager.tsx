@@ -1,6 +1,6 @@
 import { useEffect, useRef } from 'react';
 import { storage } from '@/lib/storage';
-import AppBlocker, { isCapacitor } from '@/lib/app-blocker';
+import AppBlocker, { isCapacitor, syncBlockedApps } from '@/lib/app-blocker';
 
 /**
  * Headless component that manages the synchronization between the app's state
@@ -9,7 +9,7 @@ import AppBlocker, { isCapacitor } from '@/lib/app-blocker';
  * It listens for changes in:
  * - Blocked apps list (enabled status, block mode)
  * - Focus sessions (start/end)
- * - Settings (daily limits)
+ * - Settings (daily limits, enforced natively via setUsageLimits)
  * 
  * And enforces the correct blocking state on the device.
  */
@@ -24,22 +24,21 @@ export function PersistentBlockerManager() {
       try {
         const session = storage.getActiveSession();
         const isSessionActive = !!session;
-        const isTimeLimitExceeded = storage.isTimeLimitExceeded();
         
         // Blocking is active if:
-        // 1. A focus session is running OR Daily time limit is exceeded
+        // 1. A focus session is running
         //    -> Enforce both Session Apps AND Persistent Apps
         // 2. No session running
         //    -> Enforce ONLY Persistent Apps
+        // An exhausted daily limit blocks session apps natively (see below),
+        // so JS never decides that from its own usage minutes
         
         const sessionApps = storage.getAndroidSessionApps();
         const persistentApps = storage.getAndroidPersistentApps();
         
-        const shouldEnforceSession = isSessionActive || isTimeLimitExceeded;
-        
         let appsToBlock: string[] = [...persistentApps];
         
-        if (shouldEnforceSession) {
+        if (isSessionActive) {
             // Merge session apps, avoiding duplicates
             sessionApps.forEach(pkg => {
                 if (!appsToBlock.includes(pkg)) {
@@ -49,17 +48,31 @@ export function PersistentBlockerManager() {
         }
         
         const hasAppsToBlock = appsToBlock.length > 0;
+
+        // Hand the daily limit to the native engine, which blocks session apps
+        // the moment the budget runs out even if the WebView is suspended
+        const settings = storage.getSettings();
+        const hasDailyLimit = settings.dailyTimeLimitEnabled && sessionApps.length > 0;
+        const limitState = await AppBlocker.setUsageLimits({
+            groups: hasDailyLimit
+                ? [{ id: 'daily', packages: sessionApps, limitMs: settings.dailyTimeLimitMinutes * 60 * 1000 }]
+                : [],
+        });
         
         // Get current monitoring state from localStorage (Master Switch)
         const monitoringStored = localStorage.getItem("android_monitoring");
         const masterSwitch = monitoringStored === null || monitoringStored === "true";
         
-        console.log('[PersistentBlockerManager] Enforcing blocking:', { hasAppsToBlock, masterSwitch, appsCount: appsToBlock.length });
+        // Whether the limit is used up is the native engine's call, from its own ledger
+        const limitExhausted = limitState.exhausted.length > 0;
+
+        console.log('[PersistentBlockerManager] Enforcing blocking:', { hasAppsToBlock, hasDailyLimit, limitExhausted, masterSwitch, appsCount: appsToBlock.length });
 
-        // Update the blocked list on the native side
-        await AppBlocker.setBlockedApps({ apps: appsToBlock });
+        // Update the blocked list on the native side (skipped if unchanged, a delta otherwise)
+        await syncBlockedApps(appsToBlock);
         
-        if (masterSwitch && hasAppsToBlock) {
+        // The native limit engine only sees usage while monitoring is on
+        if (masterSwitch && (hasAppsToBlock || hasDailyLimit)) {
              // Re-enforce monitoring (idempotent on native side)
              await AppBlocker.startMonitoring();
              // Ensure local state is consistent
@@ -67,7 +80,7 @@ export function PersistentBlockerManager() {
                  localStorage.setItem("android_monitoring", "true");
              }
         } else {
-             // Stop monitoring if switch is off OR no apps to block
+             // Stop monitoring if switch is off OR nothing to block or limit
              await AppBlocker.stopMonitoring();
         }
         
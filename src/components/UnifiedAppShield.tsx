@@ -2,6 +2,7 @@ import React from 'react';
 import { Smartphone, Shield, Plus, Ban, Globe } from 'lucide-react';
 import { cn } from '@/lib/utils';
 import { BlockedApp } from '@/lib/storage';
+import { appIconSrc } from '@/lib/app-blocker';
 
 interface UnifiedAppShieldProps {
   activeApps: (BlockedApp | { appName: string; packageName: string; icon?: string; blockMode: string })[];
@@ -60,7 +61,7 @@ export const UnifiedAppShield: React.FC<UnifiedAppShieldProps> = ({ activeApps,
                   
                   {icon ? (
                     <img 
-                      src={icon.startsWith('data:') ? icon : isAndroid ? `data:image/png;base64,${icon}` : icon} 
+                      src={isAndroid ? appIconSrc(icon) : icon} 
                       alt={name} 
                       className="size-8 object-contain relative z-10 transition-transform duration-500 group-hover:rotate-6" 
                     />
@@ -1,9 +1,16 @@
 import { registerPlugin, Capacitor } from "@capacitor/core";
+import type { PluginListenerHandle } from "@capacitor/core";
+import { hashBlockedApps } from "./blocklist-hash";
+
+export { hashBlockedApps };
 
 export interface AppInfo {
   packageName: string;
   appName: string;
+  // Base64 PNG, only present when explicitly requested
   icon?: string;
+  // Local URL served natively; preferred over the Base64 icon
+  iconUrl?: string;
 }
 
 export interface PermissionStatus {
@@ -13,22 +20,363 @@ export interface PermissionStatus {
   allGranted: boolean;
 }
 
+export interface UsageLogEntry {
+  packageName: string;
+  startTime: number;
+  // Signed for usageStats corrections; summing all entries gives the reconciled total
+  duration: number;
+  source: "accessibility" | "usageStats";
+}
+
+export interface UsageHistogram {
+  granularity: "hour" | "day";
+  // Start of each bucket; series[i].durations[b] is the ms spent in bucket b
+  bucketStarts: number[];
+  series: { packageName: string; durations: number[]; totalMs: number }[];
+}
+
+export interface UsageBatch {
+  // Parallel arrays: durations[i] is the time in ms spent in packages[i]. It
+  // can be negative when UsageStats reconciliation removes over-counted time
+  packages: string[];
+  durations: number[];
+  from: number;
+  to: number;
+}
+
+export interface UsageLimitPolicy {
+  apps?: { packageName: string; limitMs: number }[];
+  groups?: { id: string; packages: string[]; limitMs: number }[];
+}
+
+export interface UsageLimitState {
+  // Milliseconds used today, keyed by package name
+  usage: Record<string, number>;
+  apps: { packageName: string; limitMs: number; usedMs: number; exhausted: boolean }[];
+  groups: { id: string; limitMs: number; usedMs: number; exhausted: boolean }[];
+  exhausted: string[];
+}
+
+export interface InstalledAppsPage {
+  streamId: string;
+  apps: AppInfo[];
+  done: boolean;
+  total: number;
+}
+
+export interface InstalledAppIcon {
+  streamId: string;
+  packageName: string;
+  icon: string;
+}
+
+export interface LatencyStage {
+  count: number;
+  p50: number;
+  p95: number;
+  p99: number;
+  max: number;
+  mean: number;
+}
+
+export interface BlockingMetrics {
+  unit: "ms";
+  stages: {
+    dispatch: LatencyStage;
+    debounce: LatencyStage;
+    handoff: LatencyStage;
+    attach: LatencyStage;
+    total: LatencyStage;
+  };
+}
+
+export interface SurfaceRule {
+  id?: string;
+  packageName: string;
+  // Full resource names, e.g. "com.instagram.android:id/clips_viewer_view_pager"
+  viewIds?: string[];
+  classNames?: string[];
+}
+
+export interface SurfaceMetrics {
+  unit: "ms";
+  // Time per node-tree inspection
+  inspect: LatencyStage;
+  contentEvents: number;
+  // Content events absorbed by an already scheduled inspection
+  coalescedEvents: number;
+  inspections: number;
+  nodesVisited: number;
+  // Inspections that hit maxNodes without a match
+  budgetExhausted: number;
+  matches: number;
+  maxNodes: number;
+  maxDepth: number;
+  minIntervalMs: number;
+}
+
+export interface DebounceStat {
+  packageName: string;
+  debounceMs: number;
+  cooldownMs: number;
+  launches: number;
+  dismissals: number;
+}
+
+export interface BlockRule {
+  // prefix: "com.facebook" blocks the package and everything under it
+  // glob: "*" matches one segment, a trailing "**" the rest ("com.*.games")
+  // category: "game" | "audio" | "video" | "image" | "social" | "news" | "maps" | "productivity" | "accessibility"
+  // installer: installing package, e.g. "com.android.vending"
+  type: "prefix" | "glob" | "category" | "installer";
+  value: string;
+}
+
+export interface BlockScheduleRule {
+  id: string;
+  packages: string[];
+  // Days the window starts on, as Date.getDay() (0 = Sunday)
+  days: number[];
+  // Local "HH:mm". An end at or before the start runs past midnight
+  start: string;
+  end: string;
+}
+
+export interface BlockScheduleState {
+  rules: BlockScheduleRule[];
+  // Packages blocked by windows active right now
+  active: string[];
+  // Epoch ms of the next window start or end, if any
+  nextBoundary?: number;
+}
+
+export interface EventTraceStatus {
+  enabled: boolean;
+  records: number;
+  capacity: number;
+}
+
+export interface BlockedAppsResult {
+  count: number;
+  // Bumped natively on every change to the list
+  version: number;
+  // See hashBlockedApps
+  hash: string;
+  // False if the list already matched, in which case nothing was written
+  changed: boolean;
+  // The list moved past baseVersion; nothing was applied, send the full list
+  stale: boolean;
+}
+
 export interface AppBlockerPlugin {
-  setBlockedApps(options: { apps: string[] }): Promise<{ count: number }>;
+  setBlockedApps(options: { apps: string[] }): Promise<BlockedAppsResult>;
+  updateBlockedApps(options: {
+    add?: string[];
+    remove?: string[];
+    baseVersion?: number;
+  }): Promise<BlockedAppsResult>;
+  setBlockRules(options: { rules: BlockRule[] }): Promise<{ count: number }>;
+  getBlockRules(): Promise<{ rules: BlockRule[] }>;
+  // Off stops usage batches to JS; the native ledger, daily limits and
+  // history keep recording
+  setUsageTracking(options: { enabled: boolean }): Promise<{ enabled: boolean }>;
+  // No-ops if the service is already in the requested state
   startMonitoring(): Promise<{ monitoring: boolean }>;
   stopMonitoring(): Promise<{ monitoring: boolean }>;
+  setBlockSchedule(options: { rules: BlockScheduleRule[] }): Promise<BlockScheduleState>;
+  getBlockSchedule(): Promise<BlockScheduleState>;
   checkPermissions(): Promise<PermissionStatus>;
+  getBlockingMetrics(): Promise<BlockingMetrics>;
+  resetBlockingMetrics(): Promise<void>;
+  setSurfaceRules(options: { rules: SurfaceRule[] }): Promise<{ rules: SurfaceRule[] }>;
+  getSurfaceRules(): Promise<{ rules: SurfaceRule[] }>;
+  getSurfaceMetrics(): Promise<SurfaceMetrics>;
+  resetSurfaceMetrics(): Promise<void>;
+  getDebounceStats(): Promise<{
+    apps: DebounceStat[];
+    defaultDebounceMs: number;
+    defaultCooldownMs: number;
+  }>;
+  resetDebounceStats(): Promise<void>;
+  setEventTraceEnabled(options: { enabled: boolean }): Promise<EventTraceStatus>;
+  getEventTraceStatus(): Promise<EventTraceStatus>;
+  clearEventTrace(): Promise<EventTraceStatus>;
+  // CSV of uptimeMs,eventType,packageName,decision; uri is a shareable content:// URI
+  exportEventTrace(): Promise<{ path: string; uri: string; records: number }>;
   openAccessibilitySettings(): Promise<void>;
   openUsageStatsSettings(): Promise<void>;
   openOverlaySettings(): Promise<void>;
-  getInstalledApps(): Promise<{ apps: AppInfo[] }>;
-  getAppIcon(options: { packageName: string }): Promise<{ icon: string }>;
+  getInstalledApps(options?: { includeBase64Icons?: boolean }): Promise<{ apps: AppInfo[] }>;
+  getInstalledAppsSince(options?: { token?: string }): Promise<{
+    token: string;
+    // True when the token was missing or stale and apps holds the full list
+    full: boolean;
+    apps: AppInfo[];
+    removed: string[];
+  }>;
+  getAppIcon(options: { packageName: string }): Promise<{ icon: string; iconUrl?: string }>;
+  // Renders many icons in parallel; size is 16-512 px (default 96), webp is lossy
+  getAppIcons(options: {
+    packages: string[];
+    size?: number;
+    format?: "png" | "webp";
+  }): Promise<{
+    // Local icon URLs keyed by package name, already rendered and cached natively
+    icons: Record<string, string>;
+    // Packages that are no longer installed or failed to render
+    missing: string[];
+    mimeType: string;
+  }>;
+  startInstalledAppsStream(options?: {
+    pageSize?: number;
+    includeIcons?: boolean;
+  }): Promise<{ streamId: string }>;
+  cancelInstalledAppsStream(options: { streamId: string }): Promise<{ cancelled: boolean }>;
+  getUsageLog(options?: { from?: number; to?: number }): Promise<{ entries: UsageLogEntry[] }>;
+  // Hourly buckets cover the last 14 days, daily buckets the last 90
+  getUsageHistogram(options?: {
+    from?: number;
+    to?: number;
+    granularity?: "hour" | "day";
+    packages?: string[];
+  }): Promise<UsageHistogram>;
+  ingestUsageStats(): Promise<{ ingested: boolean; from?: number; to?: number; corrections?: number }>;
+  setUsageLimits(options: UsageLimitPolicy): Promise<UsageLimitState>;
+  getUsageLimitState(): Promise<UsageLimitState>;
+  setUsageFlushInterval(options: { intervalMs: number }): Promise<{ intervalMs: number }>;
+  flushUsage(): Promise<{ flushed: boolean }>;
+  addListener(
+    eventName: "usageBatch",
+    listenerFunc: (batch: UsageBatch) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: "installedAppsPage",
+    listenerFunc: (page: InstalledAppsPage) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: "installedAppIcon",
+    listenerFunc: (icon: InstalledAppIcon) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: "installedAppsStreamEnd",
+    listenerFunc: (event: { streamId: string; cancelled: boolean }) => void,
+  ): Promise<PluginListenerHandle>;
 }
 
 const AppBlocker = registerPlugin<AppBlockerPlugin>("AppBlocker");
 
 export default AppBlocker;
 
+// Last list the native side confirmed, for skipping no-op syncs and sending deltas
+let syncedApps: { apps: Set<string>; version: number; hash: string } | null = null;
+
+/**
+ * Makes the native blocked app list equal to apps with the least work: no
+ * call at all if its hash matches the last synced list, an add/remove delta
+ * against the last synced version otherwise, and the full list on first use
+ * or if something else changed the list in between.
+ */
+export async function syncBlockedApps(apps: string[]): Promise<BlockedAppsResult | null> {
+  const hash = hashBlockedApps(apps);
+  if (syncedApps && syncedApps.hash === hash) return null;
+
+  const next = new Set(apps);
+  let result: BlockedAppsResult | null = null;
+  if (syncedApps) {
+    const previous = syncedApps.apps;
+    result = await AppBlocker.updateBlockedApps({
+      add: [...next].filter((pkg) => !previous.has(pkg)),
+      remove: [...previous].filter((pkg) => !next.has(pkg)),
+      baseVersion: syncedApps.version,
+    });
+  }
+  if (!result || result.stale || result.hash !== hash) {
+    result = await AppBlocker.setBlockedApps({ apps: [...next] });
+  }
+  syncedApps = { apps: next, version: result.version, hash: result.hash };
+  return result;
+}
+
+/**
+ * Streams installed apps: labels arrive first in pages, icons follow one by one
+ * as the native side renders them. onError is called if the stream can't be
+ * started, in which case no page will arrive. Call the returned function to
+ * cancel, e.g. when the screen showing the list unmounts.
+ */
+export function streamInstalledApps(
+  handlers: {
+    onPage: (apps: AppInfo[], done: boolean) => void;
+    onIcon?: (packageName: string, icon: string) => void;
+    onError?: (error: unknown) => void;
+  },
+  options: { pageSize?: number } = {},
+): () => void {
+  let streamId: string | null = null;
+  let cancelled = false;
+  const handles: PluginListenerHandle[] = [];
+  // Events that arrive before startInstalledAppsStream has resolved
+  const early: (() => void)[] = [];
+
+  const dispatch = (id: string, deliver: () => void) => {
+    if (streamId === null) early.push(() => id === streamId && deliver());
+    else if (id === streamId) deliver();
+  };
+
+  const cleanup = () => {
+    handles.forEach((handle) => handle.remove());
+    handles.length = 0;
+  };
+
+  const start = async () => {
+    handles.push(
+      await AppBlocker.addListener("installedAppsPage", (page) => {
+        dispatch(page.streamId, () => handlers.onPage(page.apps, page.done));
+      }),
+      await AppBlocker.addListener("installedAppIcon", (event) => {
+        dispatch(event.streamId, () => handlers.onIcon?.(event.packageName, event.icon));
+      }),
+      await AppBlocker.addListener("installedAppsStreamEnd", (event) => {
+        dispatch(event.streamId, cleanup);
+      }),
+    );
+    if (cancelled) {
+      cleanup();
+      return;
+    }
+    const result = await AppBlocker.startInstalledAppsStream({
+      pageSize: options.pageSize,
+      includeIcons: !!handlers.onIcon,
+    });
+    streamId = result.streamId;
+    early.splice(0).forEach((deliver) => deliver());
+    if (cancelled) {
+      AppBlocker.cancelInstalledAppsStream({ streamId });
+    }
+  };
+
+  start().catch((error) => {
+    console.error("Failed to stream installed apps:", error);
+    cleanup();
+    if (!cancelled) handlers.onError?.(error);
+  });
+
+  return () => {
+    cancelled = true;
+    if (streamId) {
+      AppBlocker.cancelInstalledAppsStream({ streamId });
+    }
+  };
+}
+
+/**
+ * Returns an <img> src for a native app icon, which may be a local URL or a
+ * bare Base64 PNG.
+ */
+export function appIconSrc(icon?: string): string | undefined {
+  if (!icon) return undefined;
+  return /^(data:|https?:)/.test(icon) ? icon : `data:image/png;base64,${icon}`;
+}
+
 // Helper function to check if running on Android
 export function isAndroid(): boolean {
   return (
@@ -0,0 +1,26 @@
+import { test } from "node:test";
+import assert from "node:assert/strict";
+import { hashBlockedApps } from "./blocklist-hash.ts";
+
+// Pinned to the same values as ConfigStoreTest on the native side; if either
+// side changes, JS stops recognising unchanged lists and resends every time
+const APPS = ["com.google.android.youtube", "com.instagram.android", "com.zhiliaoapp.musically"];
+const APPS_HASH = "c2858c48";
+const EMPTY_HASH = "811c9dc5";
+const NON_ASCII_HASH = "a051af5a";
+
+test("matches the pinned native hashes", () => {
+  assert.equal(hashBlockedApps(APPS), APPS_HASH);
+  assert.equal(hashBlockedApps([]), EMPTY_HASH);
+  // UTF-16 code units, as Java's charAt sees them
+  assert.equal(hashBlockedApps(["com.example.ü"]), NON_ASCII_HASH);
+});
+
+test("ignores order and duplicates", () => {
+  const shuffled = [APPS[2], APPS[0], APPS[1], APPS[0]];
+  assert.equal(hashBlockedApps(shuffled), APPS_HASH);
+});
+
+test("depends on name boundaries", () => {
+  assert.notEqual(hashBlockedApps(["com.a", "pp"]), hashBlockedApps(["com.app"]));
+});
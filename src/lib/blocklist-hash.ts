@@ -0,0 +1,18 @@
+// Kept free of imports so it can be unit tested under plain Node
+
+/**
+ * Content hash of a blocked app list, matching ConfigStore.hashBlockedApps on
+ * the native side: 32-bit FNV-1a over the UTF-16 code units of each sorted,
+ * de-duplicated name, each followed by a newline, as eight hex digits. Never
+ * 00000000.
+ */
+export function hashBlockedApps(apps: string[]): string {
+  let hash = 0x811c9dc5;
+  for (const name of [...new Set(apps)].sort()) {
+    for (let i = 0; i < name.length; i++) {
+      hash = Math.imul(hash ^ name.charCodeAt(i), 0x01000193);
+    }
+    hash = Math.imul(hash ^ 0x0a, 0x01000193);
+  }
+  return ((hash >>> 0) || 1).toString(16).padStart(8, "0");
+}
@@ -323,21 +323,24 @@ class LocalStorageService {
     }
   }
 
+  // Negative minutes are native UsageStats corrections; today's usage never drops below zero
   addAppUsageTime(minutes: number): void {
-    if (minutes <= 0) return;
+    if (minutes === 0) return;
 
     const today = this.getLocalDateString();
     const currentUsage = this.getDailyAppUsage();
+    const applied = Math.max(minutes, -currentUsage);
+    if (applied === 0) return;
 
     const usage = {
       date: today,
-      minutes: currentUsage + minutes,
+      minutes: currentUsage + applied,
     };
 
     this.setItem(STORAGE_KEYS.DAILY_APP_USAGE, JSON.stringify(usage));
 
     // Also update permanent daily stats for history (Wasted Time)
-    this.updateDailyStats(0, minutes / 60);
+    this.updateDailyStats(0, applied / 60);
 
     this.notifyChange("stats");
   }
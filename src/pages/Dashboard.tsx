@@ -5,7 +5,7 @@ import { useAuth } from "@/contexts/AuthContext";
 import { useLocalTasks, useLocalBlockedApps } from "@/hooks/useLocalData";
 import { cn } from "@/lib/utils";
 import { toast } from "sonner";
-import AppBlocker, { isCapacitor, AppInfo, PermissionStatus } from "@/lib/app-blocker";
+import AppBlocker, { isCapacitor, AppInfo, PermissionStatus, appIconSrc } from "@/lib/app-blocker";
 import QuickAddTaskModal from "@/components/QuickAddTaskModal";
 import { Task } from "@/lib/storage";
 
@@ -398,8 +398,8 @@ export default function Dashboard() {
                        "size-16 tablet:size-20 rounded-2xl flex items-center justify-center shadow-sm relative transition-all active:scale-95 duration-200 border border-transparent",
                        isBlocked ? "bg-white ring-2 ring-primary ring-offset-2 shadow-md" : "bg-white text-muted-foreground border-border opacity-70"
                      )}>
-                        {app.icon ? (
-                          <img src={`data:image/png;base64,${app.icon}`} alt={app.appName} className="size-8 object-contain" />
+                        {app.iconUrl || app.icon ? (
+                          <img src={appIconSrc(app.iconUrl ?? app.icon)} alt={app.appName} className="size-8 object-contain" />
                         ) : (
                           <Ban className="w-6 h-6 text-muted-foreground" />
                         )}
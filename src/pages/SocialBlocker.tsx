@@ -89,7 +89,7 @@ export default function SocialBlocker() {
         return {
             packageName: pkg,
             appName: fullInfo?.appName || pkg.split('.').pop() || pkg,
-            icon: fullInfo?.icon,
+            icon: fullInfo?.iconUrl ?? fullInfo?.icon,
             blockMode: androidPersistent.includes(pkg) ? 'persistent' : 'session',
         };
     });